@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ant.props.ComponentTypeEvaluator;
+import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.PropertyHelper.Delegate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Types created by {@link ComponentTypeEvaluator}, with and without its
+ * instance cache.  The adversarial variant passes a 2000 entry classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ComponentTypeBenchmark {
+    @Param({ "path", "file" })
+    public String type;
+
+    @Param({ Fixtures.REALISTIC, Fixtures.ADVERSARIAL })
+    public String input;
+
+    @Param({ "0", "16" })
+    public int instanceCacheSize;
+
+    private ComponentTypeEvaluator evaluator;
+    private PropertyHelper propertyHelper;
+    private String expression;
+
+    @Setup
+    public void setUp() {
+        evaluator = new ComponentTypeEvaluator();
+        evaluator.setInstanceCacheSize(instanceCacheSize);
+        propertyHelper = PropertyHelper.getPropertyHelper(Fixtures
+                .newProject(new Delegate[] { evaluator }));
+        expression = type + "(" + Fixtures.pick(input, Fixtures.path(20), Fixtures.path(2000))
+                + ")";
+    }
+
+    @Benchmark
+    public Object evaluate() {
+        return evaluator.evaluate(expression, propertyHelper);
+    }
+}
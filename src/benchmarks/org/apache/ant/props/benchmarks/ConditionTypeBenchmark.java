@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ant.props.ConditionTypeEvaluator;
+import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.PropertyHelper.Delegate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Typed conditions evaluated by {@link ConditionTypeEvaluator}, with and
+ * without memoization.  The adversarial variant uses long attribute values
+ * and long, space-padded attribute lists.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConditionTypeBenchmark {
+    private static final String LONG = Fixtures.repeat("0123456789", 500);
+    private static final String PAD = Fixtures.repeat(" ", 50);
+
+    private static final String[][] EXPRESSIONS = {
+        { "os", "os(family=unix)",
+            "os(" + PAD + "family" + PAD + "=" + PAD + "unix" + PAD + "," + PAD + "name" + PAD
+                    + "=" + PAD + LONG + PAD + ")" },
+        { "equals", "equals(arg1=foo,arg2=foo)",
+            "equals(arg1=" + LONG + ",arg2=" + LONG + ",casesensitive=false,trim=true,"
+                    + "forcestring=true)" },
+        { "isset", "isset(property=value)", "isset(property=" + LONG + ")" },
+        { "available", "available(classname=java.lang.String)",
+            "available(classname=" + LONG + ",ignoresystemclasses=false)" },
+        { "negated", "!istrue(value=false)", "!istrue(value=" + LONG + ")" },
+        { "unknown", "nosuchcondition(a=b)", "nosuchcondition(" + LONG + "=" + LONG + ")" },
+    };
+
+    @Param({ "os", "equals", "isset", "available", "negated", "unknown" })
+    public String condition;
+
+    @Param({ Fixtures.REALISTIC, Fixtures.ADVERSARIAL })
+    public String input;
+
+    @Param({ "false", "true" })
+    public boolean memoize;
+
+    private ConditionTypeEvaluator evaluator;
+    private PropertyHelper propertyHelper;
+    private String expression;
+
+    @Setup
+    public void setUp() {
+        evaluator = new ConditionTypeEvaluator();
+        evaluator.setMemoize(memoize);
+        propertyHelper = PropertyHelper.getPropertyHelper(Fixtures
+                .newProject(new Delegate[] { evaluator }));
+        propertyHelper.setNewProperty("value", "set");
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            if (EXPRESSIONS[i][0].equals(condition)) {
+                expression = Fixtures.pick(input, EXPRESSIONS[i][1], EXPRESSIONS[i][2]);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("unknown condition " + condition);
+    }
+
+    @Benchmark
+    public Object evaluate() {
+        return evaluator.evaluate(expression, propertyHelper);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ant.props.ComponentTypeEvaluator;
+import org.apache.ant.props.ConditionsEvaluator;
+import org.apache.ant.props.EncodeURLEvaluator;
+import org.apache.ant.props.NestedPropertyExpander;
+import org.apache.ant.props.stringops.StringOperationsEvaluator;
+import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.PropertyHelper.Delegate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Property expansion through a PropertyHelper with every delegate of the
+ * antlib in place, as a build declaring all of them would see it; the
+ * delegating evaluators with and without their result caches.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DelegatingChainBenchmark {
+    private static final String[][] EXPRESSIONS = {
+        { "plain", "${plain.property}" },
+        { "stringop", "${version%%-*}" },
+        { "nestedStringop", "${${key}:-default}" },
+        { "condition", "${os(family=unix)}" },
+        { "logical", "${${os(family=unix)} & !${isset(property=skip)}}" },
+        { "type", "${path(${classpath})}" },
+        { "text", "Building ${project.name} ${version%%-*} (${version#*-}) on ${os.name}" },
+        { "unresolved", "${no.such.property} ${no.such:op}" },
+    };
+
+    @Param({ "plain", "stringop", "nestedStringop", "condition", "logical", "type", "text",
+            "unresolved" })
+    public String expression;
+
+    @Param({ "0", "256" })
+    public int resultCacheSize;
+
+    private PropertyHelper propertyHelper;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        StringOperationsEvaluator stringops = new StringOperationsEvaluator();
+        stringops.setResultCacheSize(resultCacheSize);
+        ConditionsEvaluator conditions = new ConditionsEvaluator();
+        conditions.setResultCacheSize(resultCacheSize);
+        propertyHelper = PropertyHelper.getPropertyHelper(Fixtures.newProject(new Delegate[] {
+            new NestedPropertyExpander(), stringops, new ComponentTypeEvaluator(),
+            new EncodeURLEvaluator(), conditions }));
+        propertyHelper.setNewProperty("plain.property", "plain value");
+        propertyHelper.setNewProperty("version", "1.10.15-SNAPSHOT");
+        propertyHelper.setNewProperty("key", "version");
+        propertyHelper.setNewProperty("project.name", "props");
+        propertyHelper.setNewProperty("classpath", Fixtures.path(20));
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            if (EXPRESSIONS[i][0].equals(expression)) {
+                text = EXPRESSIONS[i][1];
+                return;
+            }
+        }
+        throw new IllegalArgumentException("unknown expression " + expression);
+    }
+
+    @Benchmark
+    public Object expand() {
+        return propertyHelper.parseProperties(text);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ant.props.EncodeURLEvaluator;
+import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.PropertyHelper.Delegate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * URLs encoded by {@link EncodeURLEvaluator}: a typical URL, a long one full
+ * of characters needing escapes, and text that is no URL at all.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EncodeURLBenchmark {
+    @Param({ Fixtures.REALISTIC, Fixtures.ADVERSARIAL, "invalid" })
+    public String input;
+
+    private EncodeURLEvaluator evaluator;
+    private PropertyHelper propertyHelper;
+    private String expression;
+
+    @Setup
+    public void setUp() {
+        evaluator = new EncodeURLEvaluator();
+        propertyHelper = PropertyHelper.getPropertyHelper(Fixtures
+                .newProject(new Delegate[] { evaluator }));
+        if ("invalid".equals(input)) {
+            expression = "encodeURL:no url at all";
+        } else {
+            expression = "encodeURL:" + Fixtures.pick(input,
+                    "http://www.example.org/some path/file name.html?q=a b#top",
+                    "http://user:pw@www.example.org:8080/"
+                            + Fixtures.repeat("d\u00e9j\u00e0 vu/[x] {y} <z>/", 200)
+                            + "?" + Fixtures.repeat("k=v w&", 200) + "#"
+                            + Fixtures.repeat("fr ag", 50));
+        }
+    }
+
+    @Benchmark
+    public Object evaluate() {
+        return evaluator.evaluate(expression, propertyHelper);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props.benchmarks;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.PropertyHelper.Delegate;
+
+/**
+ * Fixtures shared by the benchmarks.
+ */
+final class Fixtures {
+    /** Realistic inputs */
+    static final String REALISTIC = "realistic";
+
+    /** Adversarial inputs: long values, many separators, patterns that never match */
+    static final String ADVERSARIAL = "adversarial";
+
+    private Fixtures() {
+    }
+
+    /**
+     * Create an initialized project with the given delegates, added in order.
+     * @param delegates PropertyHelper delegates
+     * @return Project
+     */
+    static Project newProject(Delegate[] delegates) {
+        Project result = new Project();
+        result.init();
+        PropertyHelper propertyHelper = PropertyHelper.getPropertyHelper(result);
+        for (int i = 0; i < delegates.length; i++) {
+            propertyHelper.add(delegates[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Create a classpath-like value.
+     * @param entries number of path entries
+     * @return String
+     */
+    static String path(int entries) {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < entries; i++) {
+            if (i > 0) {
+                sb.append(':');
+            }
+            sb.append("/home/builder/.m2/repository/org/example/lib").append(i)
+                    .append("/1.0/lib").append(i).append("-1.0.jar");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Repeat a String.
+     * @param s to repeat
+     * @param count times
+     * @return String
+     */
+    static String repeat(String s, int count) {
+        StringBuffer sb = new StringBuffer(s.length() * count);
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Pick the realistic or adversarial variant.
+     * @param input {@link #REALISTIC} or {@link #ADVERSARIAL}
+     * @param realistic value
+     * @param adversarial value
+     * @return String
+     */
+    static String pick(String input, String realistic, String adversarial) {
+        if (REALISTIC.equals(input)) {
+            return realistic;
+        }
+        if (ADVERSARIAL.equals(input)) {
+            return adversarial;
+        }
+        throw new IllegalArgumentException("unknown input " + input);
+    }
+}
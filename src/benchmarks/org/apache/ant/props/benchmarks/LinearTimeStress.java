@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props.benchmarks;
+
+import org.apache.ant.props.ComponentTypeEvaluator;
+import org.apache.ant.props.ConditionTypeEvaluator;
+import org.apache.ant.props.EncodeURLEvaluator;
+import org.apache.ant.props.LogicalOperationEvaluator;
+import org.apache.ant.props.stringops.StringOperationsEvaluator;
+import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.PropertyHelper.Delegate;
+import org.apache.tools.ant.PropertyHelper.PropertyEvaluator;
+
+/**
+ * Stress suite evaluating adversarial property names of growing length,
+ * failing if evaluation time grows faster than linearly.  Each name is
+ * evaluated by a fresh evaluator so that no cache hides the parsing cost.
+ * Run with "ant stress"; not a JMH benchmark, so it needs no download.
+ */
+public class LinearTimeStress {
+    /** Smallest name length */
+    private static final int MIN_LENGTH = 2048;
+
+    /** Largest name length */
+    private static final int MAX_LENGTH = 65536;
+
+    /** Maximum growth exponent: 1 is linear, 2 quadratic */
+    private static final double MAX_EXPONENT = 1.5;
+
+    /** Time measuring a single length may take before the suite gives up */
+    private static final long TIMEOUT_MILLIS = 10000L;
+
+    /** Minimum time to spend measuring each length */
+    private static final long MEASURE_NANOS = 50000000L;
+
+    private static final int ROUNDS = 5;
+
+    /**
+     * An adversarial input: evaluator and property name of a given length.
+     */
+    private abstract static class Case {
+        private final String name;
+
+        Case(String name) {
+            this.name = name;
+        }
+
+        abstract PropertyEvaluator createEvaluator();
+
+        abstract String createName(int length);
+    }
+
+    private abstract static class StringOperationsCase extends Case {
+        StringOperationsCase(String name) {
+            super(name);
+        }
+
+        PropertyEvaluator createEvaluator() {
+            return new StringOperationsEvaluator();
+        }
+    }
+
+    private static final Case[] CASES = {
+        new StringOperationsCase("defaultValue, no operator") {
+            String createName(int length) {
+                return Fixtures.repeat("a:", length / 2) + "\n";
+            }
+        },
+        new StringOperationsCase("defaultValue, operator on the last line") {
+            String createName(int length) {
+                return Fixtures.repeat("a\n", length / 2) + "a:-b";
+            }
+        },
+        new StringOperationsCase("replace, escaped separators") {
+            String createName(int length) {
+                return Fixtures.repeat("\\/", length / 2);
+            }
+        },
+        new StringOperationsCase("replace, missing replacement") {
+            String createName(int length) {
+                return "value/" + Fixtures.repeat("a\\/", length / 3);
+            }
+        },
+        new StringOperationsCase("substring, malformed offsets") {
+            String createName(int length) {
+                return "value" + Fixtures.repeat(":1", length / 2) + ":x";
+            }
+        },
+        new StringOperationsCase("deleteFromStart, multiline") {
+            String createName(int length) {
+                return Fixtures.repeat("#", length) + "\n\n";
+            }
+        },
+        new Case("componentType, multiline") {
+            PropertyEvaluator createEvaluator() {
+                return new ComponentTypeEvaluator();
+            }
+
+            String createName(int length) {
+                return Fixtures.repeat("(", length) + "\n)";
+            }
+        },
+        new Case("prefixed, multiline") {
+            PropertyEvaluator createEvaluator() {
+                return new EncodeURLEvaluator();
+            }
+
+            String createName(int length) {
+                return "encodeURL:" + Fixtures.repeat(":", length) + "\n:";
+            }
+        },
+        new Case("conditionType, many attributes") {
+            PropertyEvaluator createEvaluator() {
+                return new ConditionTypeEvaluator();
+            }
+
+            String createName(int length) {
+                return "nosuchcondition(" + Fixtures.repeat("a=b,", length / 4) + ")";
+            }
+        },
+        new Case("logical, long expression") {
+            PropertyEvaluator createEvaluator() {
+                return new LogicalOperationEvaluator();
+            }
+
+            String createName(int length) {
+                return "true" + Fixtures.repeat("&true", length / 5) + "&";
+            }
+        },
+    };
+
+    private final PropertyHelper propertyHelper = PropertyHelper.getPropertyHelper(Fixtures
+            .newProject(new Delegate[0]));
+
+    /**
+     * Run the stress suite.
+     * @param args ignored
+     */
+    public static void main(String[] args) {
+        int failures = new LinearTimeStress().run();
+        if (failures > 0) {
+            System.err.println(failures + " of " + CASES.length + " cases failed");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Run all cases.
+     * @return number of failed cases
+     */
+    int run() {
+        int failures = 0;
+        for (int i = 0; i < CASES.length; i++) {
+            if (!run(CASES[i])) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    private boolean run(Case c) {
+        StringBuffer sb = new StringBuffer(c.name).append(':');
+        try {
+            // warm up at the smallest length:
+            measure(c, MIN_LENGTH);
+            return fit(c, sb);
+        } catch (IllegalStateException e) {
+            System.out.println(sb.append(' ').append(e.getMessage()));
+            return false;
+        }
+    }
+
+    private boolean fit(Case c, StringBuffer sb) {
+        // least squares fit of log(time) = exponent * log(length) + constant:
+        int n = 0;
+        double sumX = 0;
+        double sumY = 0;
+        double sumXX = 0;
+        double sumXY = 0;
+        for (int length = MIN_LENGTH; length <= MAX_LENGTH; length *= 2) {
+            double nanos = measure(c, length);
+            sb.append(' ').append(length).append('=').append(Math.round(nanos / 1000)).append("us");
+            double x = Math.log(length);
+            double y = Math.log(nanos);
+            n++;
+            sumX += x;
+            sumY += y;
+            sumXX += x * x;
+            sumXY += x * y;
+        }
+        double exponent = (n * sumXY - sumX * sumY) / (n * sumXX - sumX * sumX);
+        boolean result = exponent <= MAX_EXPONENT;
+        sb.append(" exponent ").append(Math.round(exponent * 100) / 100.0);
+        System.out.println(sb.append(result ? " OK" : " FAILED"));
+        return result;
+    }
+
+    /**
+     * Measure the best time of evaluating a name, in a separate thread so that
+     * a runaway evaluation cannot stall the suite.
+     * @return nanoseconds per evaluation
+     * @throws IllegalStateException on timeout or error
+     */
+    private double measure(final Case c, int length) {
+        final String name = c.createName(length);
+        final double[] result = new double[1];
+        final Throwable[] error = new Throwable[1];
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    double best = Double.MAX_VALUE;
+                    for (int round = 0; round < ROUNDS; round++) {
+                        long start = System.nanoTime();
+                        long elapsed;
+                        int count = 0;
+                        do {
+                            c.createEvaluator().evaluate(name, propertyHelper);
+                            count++;
+                            elapsed = System.nanoTime() - start;
+                        } while (elapsed < MEASURE_NANOS / ROUNDS);
+                        best = Math.min(best, (double) elapsed / count);
+                    }
+                    result[0] = best;
+                } catch (Throwable e) {
+                    error[0] = e;
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+        try {
+            t.join(TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (t.isAlive()) {
+            throw new IllegalStateException("TIMEOUT at length " + length);
+        }
+        if (error[0] != null) {
+            throw new IllegalStateException(error[0] + " at length " + length);
+        }
+        return result[0];
+    }
+}
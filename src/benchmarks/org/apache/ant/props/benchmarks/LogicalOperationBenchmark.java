@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ant.props.LogicalOperationEvaluator;
+import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.PropertyHelper.Delegate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Logical expressions evaluated by {@link LogicalOperationEvaluator}, parsed
+ * anew (cache size 0) or taken from its cache.  The adversarial variant is a
+ * chain of 1000 operands with deeply nested parentheses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LogicalOperationBenchmark {
+    @Param({ Fixtures.REALISTIC, Fixtures.ADVERSARIAL })
+    public String input;
+
+    @Param({ "0", "256" })
+    public int cacheSize;
+
+    private LogicalOperationEvaluator evaluator;
+    private PropertyHelper propertyHelper;
+    private String expression;
+
+    @Setup
+    public void setUp() {
+        evaluator = new LogicalOperationEvaluator();
+        evaluator.setCacheSize(cacheSize);
+        propertyHelper = PropertyHelper.getPropertyHelper(Fixtures
+                .newProject(new Delegate[] { evaluator }));
+        expression = Fixtures.pick(input, "true & !false | false ^ true", Fixtures.repeat(
+                "(", 200)
+                + Fixtures.repeat("true & !false | false ^ ", 250)
+                + "true"
+                + Fixtures.repeat(")", 200));
+    }
+
+    @Benchmark
+    public Object evaluate() {
+        return evaluator.evaluate(expression, propertyHelper);
+    }
+
+    /**
+     * A plain property name, which must be rejected.
+     * @return Object
+     */
+    @Benchmark
+    public Object reject() {
+        return evaluator.evaluate("plain.property.name", propertyHelper);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ant.props.NestedPropertyExpander;
+import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.PropertyHelper.Delegate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Property expansion with {@link NestedPropertyExpander} at several nesting
+ * depths; depth 1 is a plain <code>${p0}</code>.  The adversarial variant
+ * embeds the expression in 10000 characters of literal text and uses long
+ * property names.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NestedPropertyExpanderBenchmark {
+    @Param({ "1", "2", "4", "8" })
+    public int depth;
+
+    @Param({ Fixtures.REALISTIC, Fixtures.ADVERSARIAL })
+    public String input;
+
+    private PropertyHelper propertyHelper;
+    private String expression;
+
+    @Setup
+    public void setUp() {
+        propertyHelper = PropertyHelper.getPropertyHelper(Fixtures
+                .newProject(new Delegate[] { new NestedPropertyExpander() }));
+        String prefix = Fixtures.pick(input, "p", Fixtures.repeat("long.property.name.", 50));
+        // p0 = value, p1 = p0, p2 = p1, ...
+        propertyHelper.setNewProperty(prefix + 0, "value");
+        for (int i = 1; i < depth; i++) {
+            propertyHelper.setNewProperty(prefix + i, prefix + (i - 1));
+        }
+        String padding = Fixtures.pick(input, "", Fixtures.repeat("literal text ", 385));
+        expression = padding + Fixtures.repeat("${", depth) + prefix + (depth - 1)
+                + Fixtures.repeat("}", depth) + padding;
+    }
+
+    @Benchmark
+    public Object expand() {
+        return propertyHelper.parseProperties(expression);
+    }
+}
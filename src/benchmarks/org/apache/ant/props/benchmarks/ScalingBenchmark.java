@@ -0,0 +1,350 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+
+import org.apache.ant.props.ComponentTypeEvaluator;
+import org.apache.ant.props.ConditionsEvaluator;
+import org.apache.ant.props.DigestEvaluator;
+import org.apache.ant.props.EncodeURLEvaluator;
+import org.apache.ant.props.MappedPropertiesEvaluator;
+import org.apache.ant.props.NestedPropertyExpander;
+import org.apache.ant.props.PersistentCacheEvaluator;
+import org.apache.ant.props.ReadFileEvaluator;
+import org.apache.ant.props.stringops.StringOperationsEvaluator;
+import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.PropertyHelper.Delegate;
+
+/**
+ * Expands property expressions on 1 to N threads sharing one Project, as
+ * tasks in a <code>&lt;parallel&gt;</code> block do, reporting throughput per
+ * thread count and how often the threads blocked on monitors or waited for
+ * locks.  Throughput should grow with the threads up to the number of
+ * processors; blocking shows where it does not.  Run with "ant scaling", e.g.
+ * -Dscaling.args=32 for up to 32 threads; not a JMH benchmark, so it needs no
+ * download.
+ */
+public class ScalingBenchmark {
+    /** Time to run each thread count before measuring */
+    private static final long WARMUP_MILLIS = 300L;
+
+    /** Time to measure each thread count */
+    private static final long MEASURE_MILLIS = 1000L;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Expressions expanded through a PropertyHelper with some delegates.
+     */
+    private abstract static class Case {
+        private final String name;
+        private final String[] expressions;
+
+        Case(String name, String[] expressions) {
+            this.name = name;
+            this.expressions = expressions;
+        }
+
+        abstract Delegate[] createDelegates() throws IOException;
+    }
+
+    private static final String[] STRINGOPS = {
+        "${version%%-*}", "${version#*-}", "${version/SNAPSHOT/RELEASE}", "${no.such:-default}",
+        "${${key}:-default}",
+    };
+
+    private static final String[] CONDITIONS = {
+        "${os(family=unix)}", "${isset(property=skip)}",
+        "${${os(family=unix)} & !${isset(property=skip)}}",
+        "${available(classname=java.lang.String)}",
+    };
+
+    private final File dir;
+
+    /**
+     * Create a new ScalingBenchmark.
+     * @param dir for the files some evaluators read
+     */
+    ScalingBenchmark(File dir) {
+        this.dir = dir;
+    }
+
+    private Case[] createCases() {
+        return new Case[] {
+            new Case("nested", new String[] { "${${key}}", "${project.name} ${${key}}" }) {
+                Delegate[] createDelegates() {
+                    return new Delegate[] { new NestedPropertyExpander() };
+                }
+            },
+            new Case("stringops", STRINGOPS) {
+                Delegate[] createDelegates() {
+                    return new Delegate[] { new NestedPropertyExpander(),
+                        new StringOperationsEvaluator() };
+                }
+            },
+            new Case("stringops, resultCacheSize=256", STRINGOPS) {
+                Delegate[] createDelegates() {
+                    StringOperationsEvaluator stringops = new StringOperationsEvaluator();
+                    stringops.setResultCacheSize(256);
+                    return new Delegate[] { new NestedPropertyExpander(), stringops };
+                }
+            },
+            new Case("conditions", CONDITIONS) {
+                Delegate[] createDelegates() {
+                    return new Delegate[] { new NestedPropertyExpander(),
+                        new ConditionsEvaluator() };
+                }
+            },
+            new Case("conditions, resultCacheSize=256, memoize", CONDITIONS) {
+                Delegate[] createDelegates() {
+                    ConditionsEvaluator conditions = new ConditionsEvaluator();
+                    conditions.setResultCacheSize(256);
+                    conditions.setMemoize(true);
+                    return new Delegate[] { new NestedPropertyExpander(), conditions };
+                }
+            },
+            new Case("types", new String[] { "${path(${classpath})}" }) {
+                Delegate[] createDelegates() {
+                    return new Delegate[] { new NestedPropertyExpander(),
+                        new ComponentTypeEvaluator() };
+                }
+            },
+            new Case("encodeURL", new String[] {
+                "${encodeURL:https://ant.apache.org/foo bar}",
+                "${encodeURL:https://ant.apache.org/manual/index.html?q=a b}" }) {
+                Delegate[] createDelegates() {
+                    return new Delegate[] { new EncodeURLEvaluator() };
+                }
+            },
+            new Case("mmprops", new String[] {
+                "${mmprops:" + file("store.properties") + "#key1}",
+                "${mmprops:" + file("store.properties") + "#key99}" }) {
+                Delegate[] createDelegates() {
+                    return new Delegate[] { new MappedPropertiesEvaluator() };
+                }
+            },
+            new Case("digest", new String[] {
+                "${digest:sha256:" + file("content.txt") + "}" }) {
+                Delegate[] createDelegates() {
+                    return new Delegate[] { new DigestEvaluator() };
+                }
+            },
+            new Case("readfile", new String[] { "${readfile:" + file("content.txt") + "}" }) {
+                Delegate[] createDelegates() {
+                    return new Delegate[] { new ReadFileEvaluator() };
+                }
+            },
+            new Case("persistentcache of conditions", CONDITIONS) {
+                Delegate[] createDelegates() {
+                    PersistentCacheEvaluator persistent = new PersistentCacheEvaluator();
+                    persistent.setFile(new File(dir, "props.cache"));
+                    persistent.add(new ConditionsEvaluator());
+                    return new Delegate[] { new NestedPropertyExpander(), persistent };
+                }
+            },
+        };
+    }
+
+    private String file(String name) {
+        return new File(dir, name).getAbsolutePath();
+    }
+
+    /**
+     * Run the benchmark.
+     * @param args optional maximum number of threads, default twice the
+     *        number of processors
+     * @throws Exception on error
+     */
+    public static void main(String[] args) throws Exception {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+            : Math.max(4, processors * 2);
+        File dir = File.createTempFile("props-scaling", "");
+        dir.delete();
+        dir.mkdir();
+        try {
+            ScalingBenchmark benchmark = new ScalingBenchmark(dir);
+            benchmark.createFiles();
+            if (THREADS.isThreadContentionMonitoringSupported()) {
+                THREADS.setThreadContentionMonitoringEnabled(true);
+            }
+            System.out.println(processors + " processors");
+            Case[] cases = benchmark.createCases();
+            for (int i = 0; i < cases.length; i++) {
+                benchmark.run(cases[i], maxThreads);
+            }
+        } finally {
+            File[] files = dir.listFiles();
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private void createFiles() throws IOException {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < 100; i++) {
+            sb.append("key").append(i).append(" = value ").append(i).append('\n');
+        }
+        write("store.properties", sb.toString());
+        write("content.txt", Fixtures.repeat("some content\n", 100));
+    }
+
+    private void write(String name, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(new File(dir, name));
+        try {
+            out.write(content.getBytes("ISO-8859-1"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private void run(Case c, int maxThreads) throws Exception {
+        PropertyHelper propertyHelper = PropertyHelper.getPropertyHelper(Fixtures
+                .newProject(c.createDelegates()));
+        propertyHelper.setNewProperty("version", "1.10.15-SNAPSHOT");
+        propertyHelper.setNewProperty("key", "version");
+        propertyHelper.setNewProperty("project.name", "props");
+        propertyHelper.setNewProperty("classpath", Fixtures.path(20));
+
+        // compile the code of the case before the single thread is measured:
+        measure(c, propertyHelper, 1);
+        System.out.println(c.name);
+        System.out.println("  threads     ops/ms  speedup  blocked/1k ops  waited/1k ops"
+                + "  blocked ms");
+        double single = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            long[] result = measure(c, propertyHelper, threads);
+            double opsPerMilli = (double) result[0] / MEASURE_MILLIS;
+            if (threads == 1) {
+                single = opsPerMilli;
+            }
+            System.out.println(format(threads, 9) + format(Math.round(opsPerMilli), 11)
+                    + format(opsPerMilli / single, 9) + format(result[1] * 1000.0 / result[0], 16)
+                    + format(result[2] * 1000.0 / result[0], 15) + format(result[3], 12));
+        }
+    }
+
+    /**
+     * Expand the expressions of a case on several threads.
+     * @return operations, blocked count, waited count and blocked milliseconds
+     *         of the measurement
+     */
+    private long[] measure(final Case c, final PropertyHelper propertyHelper, int threads)
+            throws Exception {
+        final CyclicBarrier start = new CyclicBarrier(threads + 1);
+        final CountDownLatch measured = new CountDownLatch(threads);
+        final CountDownLatch release = new CountDownLatch(1);
+        final long[] ops = new long[threads];
+        final long[][] before = new long[threads][];
+        final long[][] after = new long[threads][];
+        final Throwable[] error = new Throwable[1];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            workers[t] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        long warmupEnd = System.currentTimeMillis() + WARMUP_MILLIS;
+                        int i = index;
+                        while (System.currentTimeMillis() < warmupEnd) {
+                            expand(i++);
+                        }
+                        before[index] = contention();
+                        long end = System.currentTimeMillis() + MEASURE_MILLIS;
+                        long count = 0;
+                        while (System.currentTimeMillis() < end) {
+                            expand(i++);
+                            count++;
+                        }
+                        ops[index] = count;
+                        after[index] = contention();
+                        measured.countDown();
+                        // stay alive until the main thread is done looking:
+                        release.await();
+                    } catch (Throwable e) {
+                        synchronized (error) {
+                            error[0] = e;
+                        }
+                        measured.countDown();
+                    }
+                }
+
+                private void expand(int i) {
+                    propertyHelper.parseProperties(c.expressions[i % c.expressions.length]);
+                }
+            };
+            workers[t].setDaemon(true);
+            workers[t].start();
+        }
+        start.await();
+        measured.await();
+        release.countDown();
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+        }
+        if (error[0] != null) {
+            throw new IllegalStateException(c.name + ": " + error[0]);
+        }
+        long[] result = new long[4];
+        for (int t = 0; t < threads; t++) {
+            result[0] += ops[t];
+            for (int i = 0; i < 3; i++) {
+                result[i + 1] += after[t][i] - before[t][i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the blocked count, waited count and blocked milliseconds of the current thread.
+     */
+    private static long[] contention() {
+        ThreadInfo info = THREADS.getThreadInfo(Thread.currentThread().getId());
+        return new long[] { info.getBlockedCount(), info.getWaitedCount(),
+            Math.max(0, info.getBlockedTime()) };
+    }
+
+    private static String format(long n, int width) {
+        return pad(String.valueOf(n), width);
+    }
+
+    private static String format(double d, int width) {
+        return pad(String.valueOf(Math.round(d * 100) / 100.0), width);
+    }
+
+    private static String pad(String s, int width) {
+        StringBuffer sb = new StringBuffer();
+        for (int i = s.length(); i < width; i++) {
+            sb.append(' ');
+        }
+        return sb.append(s).toString();
+    }
+}
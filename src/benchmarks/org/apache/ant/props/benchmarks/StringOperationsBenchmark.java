@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ant.props.stringops.StringOperationsEvaluator;
+import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.PropertyHelper.Delegate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Each string operation, applied by {@link StringOperationsEvaluator} to a
+ * path-like value.  The adversarial variant uses a value of 500 classpath
+ * entries and, where the operation takes one, a multi-wildcard pattern
+ * that does not match.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StringOperationsBenchmark {
+    private static final String[][] EXPRESSIONS = {
+        { "substring", "value:5:10", "value:1000:20000" },
+        { "defaultValue", "unset:-default", "unset:-" + Fixtures.repeat("default", 100) },
+        { "setDefaultValue", "value:=default", "value:=" + Fixtures.repeat("default", 100) },
+        { "translate", "value:+alternate", "value:+" + Fixtures.repeat("alternate", 100) },
+        { "requireProperty", "value:?", "value:?" + Fixtures.repeat("message", 100) },
+        { "deleteFromStartGreedy", "value##*/", "value##*/*/*/*/*.zip" },
+        { "deleteFromStartReluctant", "value#*/", "value#*/*/*/*/*.zip" },
+        { "deleteFromEndGreedy", "value%%/*", "value%%.zip*/*/*/*" },
+        { "deleteFromEndReluctant", "value%.*", "value%.zip*/*/*/*" },
+        { "replaceFirst", "value/ant/ANT", "value/*lib*lib*.zip/x" },
+        { "replaceAll", "value//\\//.", "value//*lib*lib*.zip/x" },
+    };
+
+    @Param({ "substring", "defaultValue", "setDefaultValue", "translate", "requireProperty",
+            "deleteFromStartGreedy", "deleteFromStartReluctant", "deleteFromEndGreedy",
+            "deleteFromEndReluctant", "replaceFirst", "replaceAll" })
+    public String operation;
+
+    @Param({ Fixtures.REALISTIC, Fixtures.ADVERSARIAL })
+    public String input;
+
+    private StringOperationsEvaluator evaluator;
+    private PropertyHelper propertyHelper;
+    private String expression;
+
+    @Setup
+    public void setUp() {
+        evaluator = new StringOperationsEvaluator();
+        propertyHelper = PropertyHelper.getPropertyHelper(Fixtures
+                .newProject(new Delegate[] { evaluator }));
+        propertyHelper.setNewProperty("value", Fixtures.pick(input,
+                "org/apache/ant/props/stringops/Substring.java", Fixtures.path(500)));
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            if (EXPRESSIONS[i][0].equals(operation)) {
+                expression = Fixtures.pick(input, EXPRESSIONS[i][1], EXPRESSIONS[i][2]);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("unknown operation " + operation);
+    }
+
+    @Benchmark
+    public Object evaluate() {
+        return evaluator.evaluate(expression, propertyHelper);
+    }
+}
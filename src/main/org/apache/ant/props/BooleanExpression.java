@@ -0,0 +1,357 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props;
+
+import java.util.ArrayList;
+
+/**
+ * Compiled boolean expression as understood by {@link LogicalOperationEvaluator}:
+ * <code>true</code>, <code>false</code>, <code>!</code>, <code>&amp;</code>
+ * (or <code>+</code>), <code>^</code> and <code>|</code> in descending priority,
+ * plus grouping by <code>(</code> and <code>)</code>.
+ */
+final class BooleanExpression {
+    /** The constant <code>true</code> */
+    private static final Node TRUE = new Constant(true);
+
+    /** The constant <code>false</code> */
+    private static final Node FALSE = new Constant(false);
+
+    private static final int OR = '|';
+    private static final int XOR = '^';
+    private static final int AND = '&';
+
+    /** Maximum nesting of parentheses */
+    private static final int MAX_DEPTH = 256;
+
+    /** Stands for a deferred operand in the text passed to {@link #parseDeferred(String)} */
+    static final char OPERAND = '\uFFFF';
+
+    /**
+     * Supplies the values of deferred operands.
+     */
+    interface Operands {
+        /**
+         * Evaluate a deferred operand.
+         * @param index of the operand, counting from <code>0</code> left to right
+         * @return Boolean or <code>null</code> if not a boolean value
+         */
+        Boolean evaluate(int index);
+    }
+
+    /**
+     * Boolean expression with deferred operands, which can only be evaluated
+     * given their values.
+     */
+    static final class Deferred {
+        private final Node root;
+
+        private Deferred(Node root) {
+            this.root = root;
+        }
+
+        /**
+         * Evaluate this expression left to right, consulting deferred operands only
+         * while they can still affect the outcome.
+         * @param values of the deferred operands
+         * @return Boolean or <code>null</code> if an operand consulted was not boolean
+         */
+        Boolean evaluate(Operands values) {
+            return root.evaluate(values);
+        }
+    }
+
+    private final Node root;
+
+    private BooleanExpression(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Evaluate this expression.
+     * @return boolean
+     */
+    boolean evaluate() {
+        // parse() creates no operand nodes, so no values are ever consulted:
+        return root.evaluate(null).booleanValue();
+    }
+
+    /**
+     * Parse a boolean expression.  A bare <code>true</code> or <code>false</code>
+     * is not considered an expression, so as not to hide properties of that name.
+     * @param s the text to parse
+     * @return BooleanExpression or <code>null</code> if <code>s</code> is no
+     *         boolean expression.
+     */
+    static BooleanExpression parse(String s) {
+        Parser parser = new Parser(s);
+        Node result = parser.parseOr();
+        return result != null && parser.atEnd() && parser.compound
+                ? new BooleanExpression(result) : null;
+    }
+
+    /**
+     * Parse a boolean expression with deferred operands, each written as
+     * {@link #OPERAND}.
+     * @param s the text to parse
+     * @return Deferred or <code>null</code> if <code>s</code> is no
+     *         boolean expression.
+     */
+    static Deferred parseDeferred(String s) {
+        Parser parser = new Parser(s);
+        parser.deferred = true;
+        Node result = parser.parseOr();
+        return result != null && parser.atEnd() && parser.compound
+                ? new Deferred(result) : null;
+    }
+
+    /**
+     * Get the value of text as an operand, which may be a bare <code>true</code>
+     * or <code>false</code>.
+     * @param s the text
+     * @return Boolean or <code>null</code> if <code>s</code> is no boolean expression.
+     */
+    static Boolean valueOf(String s) {
+        Parser parser = new Parser(s);
+        Node result = parser.parseOr();
+        return result != null && parser.atEnd() ? result.evaluate(null) : null;
+    }
+
+    /**
+     * Node of a parsed expression.
+     */
+    private abstract static class Node {
+        /**
+         * Evaluate this node left to right, consulting deferred operands only
+         * while they can still affect the outcome.
+         * @param values of the deferred operands
+         * @return Boolean or <code>null</code> if an operand consulted was not boolean
+         */
+        abstract Boolean evaluate(Operands values);
+    }
+
+    private static final class Constant extends Node {
+        private final Boolean value;
+
+        Constant(boolean value) {
+            this.value = Boolean.valueOf(value);
+        }
+
+        Boolean evaluate(Operands values) {
+            return value;
+        }
+    }
+
+    private static final class Operand extends Node {
+        private final int index;
+
+        Operand(int index) {
+            this.index = index;
+        }
+
+        Boolean evaluate(Operands values) {
+            return values.evaluate(index);
+        }
+    }
+
+    private static final class Not extends Node {
+        private final Node operand;
+
+        Not(Node operand) {
+            this.operand = operand;
+        }
+
+        Boolean evaluate(Operands values) {
+            Boolean result = operand.evaluate(values);
+            return result == null ? null : Boolean.valueOf(!result.booleanValue());
+        }
+    }
+
+    private static final class Operation extends Node {
+        private final int operator;
+        private final Node[] operands;
+
+        Operation(int operator, Node[] operands) {
+            this.operator = operator;
+            this.operands = operands;
+        }
+
+        Boolean evaluate(Operands values) {
+            // the outcome is decided by the first false operand of '&' or true of '|':
+            Boolean decisive = operator == AND ? Boolean.FALSE
+                : operator == OR ? Boolean.TRUE : null;
+            boolean known = true;
+            boolean result = false;
+            for (int i = 0; i < operands.length; i++) {
+                Boolean value = operands[i].evaluate(values);
+                if (value == null) {
+                    known = false;
+                } else if (value.equals(decisive)) {
+                    return value;
+                } else {
+                    result ^= value.booleanValue();
+                }
+            }
+            if (!known) {
+                return null;
+            }
+            return Boolean.valueOf(decisive == null ? result : !decisive.booleanValue());
+        }
+    }
+
+    /**
+     * Recursive-descent parser working on indices into the source text.
+     */
+    private static final class Parser {
+        private final String s;
+        private int pos;
+        private int depth;
+        private boolean compound;
+        private boolean deferred;
+        private int deferredCount;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        boolean atEnd() {
+            skipWhitespace();
+            return pos == s.length();
+        }
+
+        Node parseOr() {
+            Node first = parseXor();
+            if (first == null || !accept('|')) {
+                return first;
+            }
+            ArrayList operands = new ArrayList();
+            operands.add(first);
+            do {
+                Node next = parseXor();
+                if (next == null) {
+                    return null;
+                }
+                operands.add(next);
+            } while (accept('|'));
+            return operation(OR, operands);
+        }
+
+        private Node parseXor() {
+            Node first = parseAnd();
+            if (first == null || !accept('^')) {
+                return first;
+            }
+            ArrayList operands = new ArrayList();
+            operands.add(first);
+            do {
+                Node next = parseAnd();
+                if (next == null) {
+                    return null;
+                }
+                operands.add(next);
+            } while (accept('^'));
+            return operation(XOR, operands);
+        }
+
+        private Node parseAnd() {
+            Node first = parseUnary();
+            if (first == null || !acceptAnd()) {
+                return first;
+            }
+            ArrayList operands = new ArrayList();
+            operands.add(first);
+            do {
+                Node next = parseUnary();
+                if (next == null) {
+                    return null;
+                }
+                operands.add(next);
+            } while (acceptAnd());
+            return operation(AND, operands);
+        }
+
+        private Node parseUnary() {
+            boolean negate = false;
+            while (accept('!')) {
+                negate = !negate;
+            }
+            Node result = parsePrimary();
+            return result == null || !negate ? result : new Not(result);
+        }
+
+        private Node parsePrimary() {
+            if (accept('(')) {
+                if (++depth > MAX_DEPTH) {
+                    return null;
+                }
+                Node result = parseOr();
+                depth--;
+                return result != null && accept(')') ? result : null;
+            }
+            skipWhitespace();
+            if (deferred && pos < s.length() && s.charAt(pos) == OPERAND) {
+                pos++;
+                return new Operand(deferredCount++);
+            }
+            if (s.startsWith("true", pos)) {
+                pos += 4;
+                return TRUE;
+            }
+            if (s.startsWith("false", pos)) {
+                pos += 5;
+                return FALSE;
+            }
+            return null;
+        }
+
+        private boolean acceptAnd() {
+            return accept('&') || accept('+');
+        }
+
+        private static Node operation(int operator, ArrayList operands) {
+            return new Operation(operator,
+                    (Node[]) operands.toArray(new Node[operands.size()]));
+        }
+
+        private boolean accept(char c) {
+            skipWhitespace();
+            if (pos < s.length() && s.charAt(pos) == c) {
+                pos++;
+                compound = true;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespace() {
+            while (pos < s.length() && isWhitespace(s.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        /**
+         * Same as regex <code>\s</code>.
+         */
+        private static boolean isWhitespace(char c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f'
+                    || c == '\r';
+        }
+    }
+}
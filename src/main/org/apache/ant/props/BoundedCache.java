@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded cache read without locking, for the lookups evaluators make
+ * on every expansion.  Tasks of a <code>&lt;parallel&gt;</code> block share
+ * their Project's evaluators, and an access-ordered LinkedHashMap behind a
+ * lock serialized them even on hits.  Eviction approximates
+ * least-recently-used the "clock" way: a hit marks its entry, and an
+ * eviction spares each marked entry once, unmarking it.  Neither keys nor
+ * values may be <code>null</code>.
+ */
+public final class BoundedCache {
+    private static final class Node {
+        private final Object value;
+        private volatile boolean used;
+
+        Node(Object value) {
+            this.value = value;
+        }
+    }
+
+    private final ConcurrentHashMap map = new ConcurrentHashMap();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile int maxSize;
+
+    /**
+     * Create a new BoundedCache.
+     * @param maxSize the maximum number of entries
+     */
+    public BoundedCache(int maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * Get a cached value.
+     * @param key Object
+     * @return Object or <code>null</code>
+     */
+    public Object get(Object key) {
+        Node node = (Node) map.get(key);
+        if (node == null) {
+            return null;
+        }
+        // only write when needed, so hits on a hot entry leave its cache line shared:
+        if (!node.used) {
+            node.used = true;
+        }
+        return node.value;
+    }
+
+    /**
+     * Cache a value, evicting entries to honor the maximum size.
+     * @param key Object
+     * @param value Object
+     */
+    public void put(Object key, Object value) {
+        if (maxSize > 0) {
+            map.put(key, new Node(value));
+            if (map.size() > maxSize) {
+                evict();
+            }
+        }
+    }
+
+    /**
+     * Remove a cached value.
+     * @param key Object
+     */
+    public void remove(Object key) {
+        map.remove(key);
+    }
+
+    /**
+     * Remove all entries and reset the eviction count.
+     */
+    public void clear() {
+        map.clear();
+        evictions.set(0);
+    }
+
+    /**
+     * Set the maximum number of entries; <code>0</code> disables caching.
+     * @param maxSize int
+     */
+    public void setMaxSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("invalid cache size: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    /**
+     * Get the maximum number of entries.
+     * @return int
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Get the current number of entries.
+     * @return int
+     */
+    public int getSize() {
+        return map.size();
+    }
+
+    /**
+     * Get the number of entries evicted to honor the maximum size.
+     * @return long
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private void evict() {
+        // the first sweep may only unmark entries; the second evicts regardless
+        for (int sweep = 0; sweep < 2; sweep++) {
+            for (Iterator iter = map.entrySet().iterator(); iter.hasNext();) {
+                if (map.size() <= maxSize) {
+                    return;
+                }
+                Map.Entry e = (Map.Entry) iter.next();
+                Node node = (Node) e.getValue();
+                if (sweep == 0 && node.used) {
+                    node.used = false;
+                } else if (map.remove(e.getKey(), node)) {
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -19,6 +19,9 @@
  */
 package org.apache.ant.props;
 
+import java.lang.reflect.Constructor;
+
+import org.apache.tools.ant.AntTypeDefinition;
 import org.apache.tools.ant.ComponentHelper;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.PropertyHelper;
@@ -26,12 +29,26 @@ import org.apache.tools.ant.PropertyHelper;
 /**
  * Property evaluator that will map a currently defined Ant type using its String constructor, if it
  * has any.  Default syntax is <code><em>type</em>(<em>arg</em>)</code>.
+ *
+ * <p>The constructors of each type class are looked up once.  Optionally, the instances
+ * created can be cached so that identical expressions yield the same object.
  */
 public class ComponentTypeEvaluator extends RegexBasedEvaluator {
     private static final Class[] PROJECT_STRING = new Class[] { Project.class, String.class };
 
     private static final Class[] STRING_ONLY = new Class[] { String.class };
 
+    /** Maximum number of type classes whose constructors are kept */
+    private static final int FACTORY_CACHE_SIZE = 64;
+
+    /**
+     * Factories by type class; bounded rather than weak, as each factory
+     * refers to its class through the constructors.
+     */
+    private final BoundedCache factories = new BoundedCache(FACTORY_CACHE_SIZE);
+
+    private final BoundedCache instances = new BoundedCache(0);
+
     /**
      * Create a new ComponentTypeEvaluator.
      */
@@ -39,6 +56,44 @@ public class ComponentTypeEvaluator extends RegexBasedEvaluator {
         super("^(.*?)\\((.*)\\)$");
     }
 
+    /**
+     * {@inheritDoc}
+     * Requires <code>(</code> and a final <code>)</code>.
+     */
+    protected NameFilter createNameFilter() {
+        return NameFilter.containingAll("(").withLast(')');
+    }
+
+    /**
+     * Set the maximum number of created instances to cache by expression;
+     * default <code>0</code>, no caching.  With a cache, repeated evaluation of
+     * the same expression returns the same, possibly since modified, object.
+     * @param instanceCacheSize int
+     */
+    public void setInstanceCacheSize(int instanceCacheSize) {
+        instances.setMaxSize(instanceCacheSize);
+        instances.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected String[] match(String propertyName) {
+        // as the pattern: '.' stops at line feeds, '$' matches before a final one
+        int len = propertyName.indexOf('\n');
+        if (len < 0) {
+            len = propertyName.length();
+        } else if (len < propertyName.length() - 1) {
+            return null;
+        }
+        int lparen = propertyName.indexOf('(');
+        if (lparen < 0 || lparen >= len - 1 || propertyName.charAt(len - 1) != ')') {
+            return null;
+        }
+        return new String[] { propertyName.substring(0, len), propertyName.substring(0, lparen),
+                propertyName.substring(lparen + 1, len - 1) };
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -46,26 +101,93 @@ public class ComponentTypeEvaluator extends RegexBasedEvaluator {
      *      org.apache.tools.ant.PropertyHelper)
      */
     protected Object evaluate(String[] groups, PropertyHelper propertyHelper) {
-        Object result = null;
         Project p = propertyHelper.getProject();
-        Class componentType = ComponentHelper.getComponentHelper(p).getDefinition(groups[1])
-                .getTypeClass(p);
-        if (componentType != null) {
-            try {
-                result = componentType.getConstructor(PROJECT_STRING).newInstance(
-                        new Object[] { p, groups[2] });
-            } catch (Exception e) {
-            }
-            try {
-                result = componentType.getConstructor(STRING_ONLY).newInstance(
-                        new Object[] { groups[2] });
-            } catch (Exception e) {
+        AntTypeDefinition definition = ComponentHelper.getComponentHelper(p).getDefinition(
+                groups[1]);
+        if (definition == null) {
+            return null;
+        }
+        Class componentType = definition.getTypeClass(p);
+        if (componentType == null) {
+            return null;
+        }
+        Instance cached = (Instance) instances.get(groups[0]);
+        if (cached != null && cached.project == p && cached.type == componentType) {
+            return cached.value;
+        }
+        Object result = getFactory(componentType).create(p, groups[2]);
+        if (result != null) {
+            p.setProjectReference(result);
+            instances.put(groups[0], new Instance(p, componentType, result));
+        }
+        return result;
+    }
+
+    private Factory getFactory(Class componentType) {
+        Factory result = (Factory) factories.get(componentType);
+        if (result == null) {
+            // racing threads look up equivalent constructors; last one wins:
+            result = new Factory(getConstructor(componentType, PROJECT_STRING),
+                    getConstructor(componentType, STRING_ONLY));
+            factories.put(componentType, result);
+        }
+        return result;
+    }
+
+    private static Constructor getConstructor(Class componentType, Class[] parameterTypes) {
+        try {
+            return componentType.getConstructor(parameterTypes);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Constructors of a type class taking <code>(Project, String)</code> and
+     * <code>(String)</code>, either possibly <code>null</code>.
+     */
+    private static final class Factory {
+        private final Constructor withProject;
+        private final Constructor stringOnly;
+
+        Factory(Constructor withProject, Constructor stringOnly) {
+            this.withProject = withProject;
+            this.stringOnly = stringOnly;
+        }
+
+        /**
+         * Create an instance, falling back to the <code>(String)</code>
+         * constructor if the <code>(Project, String)</code> one fails.
+         */
+        Object create(Project p, String arg) {
+            if (withProject != null) {
+                try {
+                    return withProject.newInstance(new Object[] { p, arg });
+                } catch (Exception e) {
+                }
             }
-            if (result != null) {
-                p.setProjectReference(result);
+            if (stringOnly != null) {
+                try {
+                    return stringOnly.newInstance(new Object[] { arg });
+                } catch (Exception e) {
+                }
             }
+            return null;
         }
-        return result;
     }
 
+    /**
+     * Cached instance, valid for the project and type class it was created for.
+     */
+    private static final class Instance {
+        private final Project project;
+        private final Class type;
+        private final Object value;
+
+        Instance(Project project, Class type, Object value) {
+            this.project = project;
+            this.type = type;
+            this.value = value;
+        }
+    }
 }
@@ -16,17 +16,31 @@
  */
 package org.apache.ant.props;
 
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.tools.ant.AntTypeDefinition;
+import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.ComponentHelper;
 import org.apache.tools.ant.IntrospectionHelper;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.PropertyHelper.PropertyEvaluator;
 import org.apache.tools.ant.TypeAdapter;
+import org.apache.tools.ant.taskdefs.Available;
 import org.apache.tools.ant.taskdefs.condition.Condition;
+import org.apache.tools.ant.taskdefs.condition.Contains;
+import org.apache.tools.ant.taskdefs.condition.Equals;
+import org.apache.tools.ant.taskdefs.condition.IsFalse;
+import org.apache.tools.ant.taskdefs.condition.IsSet;
+import org.apache.tools.ant.taskdefs.condition.IsTrue;
+import org.apache.tools.ant.taskdefs.condition.Os;
 
 /**
  * Property evaluator that evaluates Ant conditions to a Boolean
@@ -35,72 +49,201 @@ import org.apache.tools.ant.taskdefs.condition.Condition;
  * <p>Default syntax is
  * <code>[!]<em>condition</em>(<em>attribute</em>=<em>value</em>)</code>,
  * for example <code>os(family=unix)</code> or <code>!os(family=unix)</code>.
+ *
+ * <p>Each expression is parsed once into a cached template that remembers the
+ * condition definition and the attribute setters of the condition class;
+ * evaluating it again only creates a fresh condition and applies the values.
+ *
+ * <p>If <code>memoize</code> is set, the outcomes of conditions known not to
+ * change during the build are remembered as well: <code>os</code>,
+ * <code>equals</code>, <code>contains</code>, <code>istrue</code>,
+ * <code>isfalse</code>, and <code>available</code> for a class or resource
+ * on Ant's own classpath.  <code>isset</code> outcomes are forgotten whenever
+ * a property is set, and not used while their property is declared
+ * <code>&lt;local&gt;</code>; <code>available</code> outcomes for a file are
+ * forgotten whenever the file's timestamp changes.
  */
-public class ConditionTypeEvaluator extends RegexBasedEvaluator {
-    private static final Pattern COMMA = Pattern.compile(",");
-    private static final Pattern EQ = Pattern.compile("=");
-
-    private static final String ASSIGN_ATTR = "" //
-            + "(?:.+?)" // reluctant one or more !=
-            + "=" // equals
-            + "(?:.+?)" // reluctant one or more chars
-    ;
-    private static final String PATTERN = "" //
-            + "^" // beginning
-            + "(!)?" // optional bang implying NOT, capturing group 1
-            + "(.+?)" // reluctant one-or-more characters for condition name
-            + "\\(" // LPAREN
-            + "(" // capturing group 2, attribute assignments
-            + "(?:" // open nc group ASSIGN_ATTR 1
-            + ASSIGN_ATTR //
-            + ")" // end nc group ASSIGN_ATTR 1
-            + "(?:" // open nc group ASSIGN_ATTR 2..N
-            + "," // delimiting comma
-            + ASSIGN_ATTR //
-            + ")*" // 0..N occurrences
-            + ")" // end nc group ASSIGN_ATTR 2..N
-            + "\\)" // RPAREN
-            + "$" // EOF
-    ;
+public class ConditionTypeEvaluator implements PropertyEvaluator, NameFilter.Provider {
+    /** Default maximum number of cached condition templates */
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    private static final NameFilter NAME_FILTER = NameFilter.containingAll("(=").withLast(')');
+
+    /** Cached for names that are no condition expressions */
+    private static final Object NO_TEMPLATE = new Object();
+
+    private static final int NOT_MEMOIZABLE = 0;
+    private static final int STABLE = 1;
+    private static final int PROPERTY_DEPENDENT = 2;
+    private static final int FILE_DEPENDENT = 3;
+
+    private boolean memoize;
+    private volatile Memo memo;
+    private final AtomicLong memoHits = new AtomicLong();
+    private final AtomicLong memoMisses = new AtomicLong();
+
+    private final BoundedCache cache = new BoundedCache(DEFAULT_CACHE_SIZE);
+
+    private EvaluatorStatistics statistics;
 
     /**
-     * Create a new ConditionTypeEvaluator instance.
+     * {@inheritDoc}
      */
-    public ConditionTypeEvaluator() {
-        super(PATTERN);
+    public Object evaluate(String propertyName, PropertyHelper propertyHelper) {
+        if (!EvaluatorStatistics.isEnabled()) {
+            return evaluateName(propertyName, propertyHelper);
+        }
+        EvaluatorStatistics stats = getStatistics();
+        long start = System.nanoTime();
+        try {
+            return stats.record(start, evaluateName(propertyName, propertyHelper));
+        } catch (RuntimeException e) {
+            stats.recordException(start);
+            throw e;
+        }
+    }
+
+    private Object evaluateName(String propertyName, PropertyHelper propertyHelper) {
+        ConditionTemplate template = getTemplate(propertyName);
+        if (template == null) {
+            return null;
+        }
+        if (!memoize) {
+            return template.evaluate(propertyHelper.getProject());
+        }
+        Memo m = getMemo(propertyHelper);
+        Boolean result = template.recall(m);
+        if (result == null) {
+            memoMisses.incrementAndGet();
+            int generation = m.tracker.getGeneration();
+            boolean settled = m.tracker.isSettled();
+            result = (Boolean) template.evaluate(propertyHelper.getProject());
+            if (result != null) {
+                template.remember(m, result, generation, settled);
+            }
+        } else {
+            memoHits.incrementAndGet();
+            propertyHelper.getProject().log(template.recallMessage, Project.MSG_DEBUG);
+        }
+        return result;
     }
 
     /**
      * {@inheritDoc}
      */
-    protected Object evaluate(String[] groups, PropertyHelper propertyHelper) {
-        Project p = propertyHelper.getProject();
-        boolean negate = false;
-        if ("!".equals(groups[1])) {
-            negate = true;
-        }
-        Condition cond = createCondition(p, groups[2]);
-        if (cond != null) {
-            if (groups[3].length() > 0) {
-                Object realObject = TypeAdapter.class.isInstance(cond) ? ((TypeAdapter) cond)
-                        .getProxy() : cond;
-                if (realObject == null) {
-                    throw new IllegalStateException(
-                            "Found null proxy object for adapted condition " + cond.toString());
-                }
-                IntrospectionHelper ih = IntrospectionHelper.getHelper(realObject.getClass());
-                String[] attributes = COMMA.split(groups[3]);
-                for (int i = 0; i < attributes.length; i++) {
-                    String[] keyValue = EQ.split(attributes[i]);
-                    ih.setAttribute(p, realObject, keyValue[0].trim(), keyValue[1].trim());
+    public NameFilter getNameFilter() {
+        return NAME_FILTER;
+    }
+
+    private EvaluatorStatistics getStatistics() {
+        EvaluatorStatistics result = statistics;
+        if (result == null) {
+            result = EvaluatorStatistics.forClass(getClass());
+            statistics = result;
+        }
+        return result;
+    }
+
+    /**
+     * Set whether to remember the outcomes of conditions that cannot change
+     * (or whose dependencies can be checked cheaply).  Default <code>false</code>.
+     * Outcomes are kept with the cached templates, so a cache size of
+     * <code>0</code> also disables memoization.
+     * @param memoize boolean
+     */
+    public void setMemoize(boolean memoize) {
+        this.memoize = memoize;
+    }
+
+    /**
+     * Learn whether condition outcomes are memoized.
+     * @return boolean
+     */
+    public boolean isMemoize() {
+        return memoize;
+    }
+
+    /**
+     * Get the number of evaluations answered from memoized outcomes.
+     * @return long
+     */
+    public long getMemoHits() {
+        return memoHits.get();
+    }
+
+    /**
+     * Get the number of memoizing evaluations that had to run the condition.
+     * @return long
+     */
+    public long getMemoMisses() {
+        return memoMisses.get();
+    }
+
+    /**
+     * Forget all memoized outcomes and reset the statistics.
+     */
+    public void clearMemo() {
+        Memo m = memo;
+        if (m != null) {
+            memo = new Memo(m.tracker);
+        }
+        memoHits.set(0);
+        memoMisses.set(0);
+    }
+
+    private Memo getMemo(PropertyHelper propertyHelper) {
+        Memo result = memo;
+        if (result == null || result.tracker.getPropertyHelper() != propertyHelper) {
+            synchronized (this) {
+                result = memo;
+                if (result == null || result.tracker.getPropertyHelper() != propertyHelper) {
+                    result = new Memo(PropertyChangeTracker.install(propertyHelper));
+                    memo = result;
                 }
             }
-            return Boolean.valueOf(cond.eval() ^ negate);
         }
-        return null;
+        return result;
+    }
+
+    /**
+     * Set the maximum number of parsed condition templates to cache;
+     * <code>0</code> disables caching.
+     * @param cacheSize int
+     */
+    public void setCacheSize(int cacheSize) {
+        cache.setMaxSize(cacheSize);
+        cache.clear();
+    }
+
+    /**
+     * Learn whether a property name is a condition expression this evaluator handles,
+     * whether or not the condition it names exists.
+     * @param propertyName to check
+     * @return boolean
+     */
+    boolean isConditionExpression(String propertyName) {
+        return getTemplate(propertyName) != null;
+    }
+
+    private ConditionTemplate getTemplate(String propertyName) {
+        if (!NAME_FILTER.accepts(propertyName)) {
+            return null;
+        }
+        Object cached = cache.get(propertyName);
+        if (cached != null) {
+            return cached == NO_TEMPLATE ? null : (ConditionTemplate) cached;
+        }
+        ConditionTemplate result = ConditionTemplate.parse(propertyName);
+        cache.put(propertyName, result == null ? NO_TEMPLATE : result);
+        return result;
     }
 
-    private Condition createCondition(Project project, String type) {
+    /**
+     * Create a condition the way Ant would for a nested element:
+     * a component of the given name, failing that a restricted
+     * definition exposing {@link Condition}.
+     */
+    private static Condition createCondition(Project project, String type) {
         Condition result = null;
         ComponentHelper componentHelper = ComponentHelper.getComponentHelper(project);
         Object o = componentHelper.createComponent(type);
@@ -108,6 +251,9 @@ public class ConditionTypeEvaluator extends RegexBasedEvaluator {
             result = (Condition) o;
         } else {
             List restrictedDefinitions = componentHelper.getRestrictedDefinitions(type);
+            if (restrictedDefinitions == null) {
+                return null;
+            }
             for (Iterator iter = restrictedDefinitions.iterator(); iter.hasNext();) {
                 AntTypeDefinition typeDefinition = (AntTypeDefinition) iter.next();
                 Class exposedClass = typeDefinition.getExposedClass(project);
@@ -125,4 +271,409 @@ public class ConditionTypeEvaluator extends RegexBasedEvaluator {
         return result;
     }
 
+    private static Object getRealObject(Condition cond) {
+        Object result = cond instanceof TypeAdapter ? ((TypeAdapter) cond).getProxy() : cond;
+        if (result == null) {
+            throw new IllegalStateException("Found null proxy object for adapted condition "
+                    + cond.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Parsed <code>[!]name(attr=value,...)</code> expression.
+     */
+    private static final class ConditionTemplate {
+        private final String expression;
+        private final boolean negate;
+        private final String name;
+        private final String[] attributes;
+        private final String[] values;
+        private final String recallMessage;
+        private volatile Binding binding;
+        private volatile Memoized memoized;
+
+        private ConditionTemplate(String expression, boolean negate, String name,
+                String[] attributes, String[] values) {
+            this.expression = expression;
+            this.negate = negate;
+            this.name = name;
+            this.attributes = attributes;
+            this.values = values;
+            recallMessage = "Using memoized outcome of " + expression;
+        }
+
+        /**
+         * Parse an expression in linear time.  Matches what the former
+         * pattern <code>^(!)?(.+?)\((ASSIGN(?:,ASSIGN)*)\)$</code>, with ASSIGN
+         * being <code>.+?=.+?</code>, accepted:  the name runs to the first
+         * '(' and the attribute text must hold an '=' that is neither its
+         * first nor its last character.
+         * @param s the expression
+         * @return ConditionTemplate or <code>null</code> if <code>s</code> is not a
+         *         condition expression
+         */
+        static ConditionTemplate parse(String s) {
+            int len = s.length();
+            // like '$', tolerate a final line terminator:
+            if (len > 0 && s.charAt(len - 1) == '\n') {
+                s = s.substring(0, --len);
+            }
+            if (len < 5 || s.charAt(len - 1) != ')' || s.indexOf('\n') >= 0) {
+                return null;
+            }
+            if (s.charAt(0) == '!') {
+                ConditionTemplate result = parse(s, 1);
+                if (result != null) {
+                    return result;
+                }
+            }
+            return parse(s, 0);
+        }
+
+        private static ConditionTemplate parse(String s, int nameStart) {
+            int len = s.length();
+            int lparen = s.indexOf('(', nameStart + 1);
+            if (lparen < 0) {
+                return null;
+            }
+            int eq = s.indexOf('=', lparen + 2);
+            if (eq < 0 || eq > len - 3) {
+                return null;
+            }
+            String[] assignments = split(s.substring(lparen + 1, len - 1), ',');
+            String[] attributes = new String[assignments.length];
+            String[] values = new String[assignments.length];
+            for (int i = 0; i < assignments.length; i++) {
+                String[] keyValue = split(assignments[i], '=');
+                attributes[i] = keyValue[0].trim();
+                // a malformed assignment is only reported once the condition is known:
+                values[i] = keyValue.length < 2 ? null : keyValue[1].trim();
+            }
+            return new ConditionTemplate(s, nameStart > 0, s.substring(nameStart, lparen),
+                    attributes, values);
+        }
+
+        /**
+         * Split like {@link String#split(String)} on a single character,
+         * i.e. dropping trailing empty strings.
+         */
+        private static String[] split(String s, char c) {
+            ArrayList result = new ArrayList();
+            int start = 0;
+            for (int pos = s.indexOf(c); pos >= 0; pos = s.indexOf(c, start)) {
+                result.add(s.substring(start, pos));
+                start = pos + 1;
+            }
+            result.add(s.substring(start));
+            int size = result.size();
+            while (size > 1 && ((String) result.get(size - 1)).length() == 0) {
+                result.remove(--size);
+            }
+            return (String[]) result.toArray(new String[size]);
+        }
+
+        /**
+         * Get the memoized outcome, if still valid.
+         * @param memo current Memo
+         * @return Boolean or <code>null</code>
+         */
+        Boolean recall(Memo memo) {
+            Memoized m = memoized;
+            return m != null && m.isValid(memo) ? m.value : null;
+        }
+
+        /**
+         * Memoize an outcome if the condition allows it.
+         * @param memo current Memo
+         * @param value outcome
+         * @param generation property generation before the condition was evaluated
+         * @param settled whether no properties were being set then
+         */
+        void remember(Memo memo, Boolean value, int generation, boolean settled) {
+            Binding b = binding;
+            Setters setters = b == null ? null : b.setters;
+            if (setters == null || setters.purity == NOT_MEMOIZABLE) {
+                return;
+            }
+            String property = null;
+            if (setters.purity == PROPERTY_DEPENDENT) {
+                property = getValue("property");
+                if (!(settled && generation == memo.tracker.getGeneration())
+                        || property == null || memo.tracker.isLocal(property)) {
+                    // the outcome may not reflect the properties of any one generation
+                    return;
+                }
+            }
+            File file = null;
+            if (setters.purity == FILE_DEPENDENT) {
+                file = b.project.resolveFile(getValue("file"));
+            }
+            memoized = new Memoized(memo, value, setters.purity, generation, property, file);
+        }
+
+        /**
+         * Get the value assigned to an attribute, the last one if repeated.
+         */
+        private String getValue(String attribute) {
+            String result = null;
+            for (int i = 0; i < attributes.length; i++) {
+                if (attribute.equalsIgnoreCase(attributes[i])) {
+                    result = values[i];
+                }
+            }
+            return result;
+        }
+
+        Object evaluate(Project project) {
+            Binding b = binding;
+            if (b == null || !b.isValid(project, name)) {
+                b = new Binding(project, name);
+                binding = b;
+            }
+            Condition cond = b.create();
+            if (cond == null) {
+                cond = createCondition(project, name);
+                if (cond == null) {
+                    return null;
+                }
+            }
+            Object realObject = getRealObject(cond);
+            Setters setters = b.setters;
+            if (setters == null || setters.type != realObject.getClass()) {
+                setters = new Setters(project, realObject.getClass(), attributes, values);
+                b.setters = setters;
+            }
+            setters.apply(realObject, expression);
+            return Boolean.valueOf(cond.eval() ^ negate);
+        }
+    }
+
+    /**
+     * Generation of memoized outcomes, tied to the PropertyHelper whose
+     * property changes are tracked.
+     */
+    private static final class Memo {
+        private final PropertyChangeTracker tracker;
+
+        Memo(PropertyChangeTracker tracker) {
+            this.tracker = tracker;
+        }
+    }
+
+    /**
+     * Memoized outcome of a {@link ConditionTemplate}.
+     */
+    private static final class Memoized {
+        private final Memo memo;
+        private final Boolean value;
+        private final int purity;
+        private final int generation;
+        private final String property;
+        private final File file;
+        private final long lastModified;
+
+        Memoized(Memo memo, Boolean value, int purity, int generation, String property,
+                File file) {
+            this.memo = memo;
+            this.value = value;
+            this.purity = purity;
+            this.generation = generation;
+            this.property = property;
+            this.file = file;
+            this.lastModified = file == null ? 0L : file.lastModified();
+        }
+
+        boolean isValid(Memo memo) {
+            if (memo != this.memo) {
+                return false;
+            }
+            switch (purity) {
+            case PROPERTY_DEPENDENT:
+                return generation == memo.tracker.getGeneration()
+                        && !memo.tracker.isLocal(property);
+            case FILE_DEPENDENT:
+                return lastModified == file.lastModified();
+            default:
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Condition definition of a {@link ConditionTemplate} as resolved for a given project.
+     */
+    private static final class Binding {
+        private final Project project;
+        private final ComponentHelper componentHelper;
+        private final AntTypeDefinition componentDefinition;
+        private final AntTypeDefinition conditionDefinition;
+        private volatile Setters setters;
+
+        Binding(Project project, String name) {
+            this.project = project;
+            componentHelper = ComponentHelper.getComponentHelper(project);
+            componentDefinition = componentHelper.getDefinition(name);
+            conditionDefinition = isCondition(componentDefinition) ? componentDefinition
+                    : findRestrictedCondition(name);
+        }
+
+        private AntTypeDefinition findRestrictedCondition(String name) {
+            List restrictedDefinitions = componentHelper.getRestrictedDefinitions(name);
+            if (restrictedDefinitions == null) {
+                return null;
+            }
+            for (Iterator iter = restrictedDefinitions.iterator(); iter.hasNext();) {
+                AntTypeDefinition typeDefinition = (AntTypeDefinition) iter.next();
+                if (isCondition(typeDefinition)) {
+                    return typeDefinition;
+                }
+            }
+            return null;
+        }
+
+        private boolean isCondition(AntTypeDefinition definition) {
+            if (definition == null) {
+                return false;
+            }
+            Class exposedClass = definition.getExposedClass(project);
+            return exposedClass != null && Condition.class.isAssignableFrom(exposedClass);
+        }
+
+        /**
+         * Learn whether the named component is still defined as it was.
+         */
+        boolean isValid(Project project, String name) {
+            return project == this.project
+                    && componentHelper.getDefinition(name) == componentDefinition;
+        }
+
+        /**
+         * Create a condition from the resolved definition.
+         * @return Condition or <code>null</code> to fall back to the lookup by name
+         */
+        Condition create() {
+            if (conditionDefinition == null) {
+                return null;
+            }
+            try {
+                Object o = conditionDefinition.create(project);
+                return o instanceof Condition ? (Condition) o : null;
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Attribute setters of a condition class, bound in advance where the
+     * setter takes a String, an Object or a boolean; everything else goes
+     * through {@link IntrospectionHelper#setAttribute} so Ant does the conversion.
+     */
+    private static final class Setters {
+        private final Class type;
+        private final Project project;
+        private final IntrospectionHelper introspectionHelper;
+        private final String[] attributes;
+        private final Method[] methods;
+        private final Object[] arguments;
+        private final int purity;
+
+        Setters(Project project, Class type, String[] attributes, String[] values) {
+            this.type = type;
+            this.project = project;
+            this.attributes = attributes;
+            purity = getPurity(type, attributes);
+            introspectionHelper = IntrospectionHelper.getHelper(project, type);
+            methods = new Method[attributes.length];
+            arguments = new Object[attributes.length];
+            for (int i = 0; i < attributes.length; i++) {
+                if (values[i] == null) {
+                    continue;
+                }
+                Class argType;
+                Method m;
+                try {
+                    argType = introspectionHelper.getAttributeType(attributes[i]);
+                    m = introspectionHelper.getAttributeMethod(attributes[i]);
+                } catch (BuildException e) {
+                    // unsupported attribute; let IntrospectionHelper complain
+                    arguments[i] = values[i];
+                    continue;
+                }
+                if (argType == String.class || argType == Object.class) {
+                    arguments[i] = values[i];
+                } else if (argType == Boolean.TYPE || argType == Boolean.class) {
+                    arguments[i] = Boolean.valueOf(Project.toBoolean(values[i]));
+                } else {
+                    arguments[i] = values[i];
+                    continue;
+                }
+                if (m.getParameterTypes().length == 1
+                        && m.getParameterTypes()[0] == argType) {
+                    methods[i] = m;
+                }
+            }
+        }
+
+        /**
+         * Classify a condition by whether its outcome may change during the build.
+         */
+        private static int getPurity(Class type, String[] attributes) {
+            if (type == Os.class || type == Equals.class || type == Contains.class
+                    || type == IsTrue.class || type == IsFalse.class) {
+                return STABLE;
+            }
+            if (type == IsSet.class) {
+                return PROPERTY_DEPENDENT;
+            }
+            if (type == Available.class) {
+                int result = NOT_MEMOIZABLE;
+                for (int i = 0; i < attributes.length; i++) {
+                    String name = attributes[i].toLowerCase(Locale.ENGLISH);
+                    if ("classname".equals(name) || "resource".equals(name)) {
+                        if (result == FILE_DEPENDENT) {
+                            return NOT_MEMOIZABLE;
+                        }
+                        result = STABLE;
+                    } else if ("file".equals(name)) {
+                        if (result == STABLE) {
+                            return NOT_MEMOIZABLE;
+                        }
+                        result = FILE_DEPENDENT;
+                    } else if (!"type".equals(name) && !"ignoresystemclasses".equals(name)) {
+                        // classpath, filepath &c.
+                        return NOT_MEMOIZABLE;
+                    }
+                }
+                return result;
+            }
+            return NOT_MEMOIZABLE;
+        }
+
+        void apply(Object target, String expression) {
+            for (int i = 0; i < methods.length; i++) {
+                if (arguments[i] == null) {
+                    throw new BuildException("Invalid attribute assignment \"" + attributes[i]
+                            + "\" in " + expression);
+                }
+                if (methods[i] == null) {
+                    introspectionHelper.setAttribute(project, target, attributes[i],
+                            (String) arguments[i]);
+                    continue;
+                }
+                try {
+                    methods[i].invoke(target, new Object[] {arguments[i]});
+                } catch (InvocationTargetException e) {
+                    Throwable t = e.getTargetException();
+                    if (t instanceof BuildException) {
+                        throw (BuildException) t;
+                    }
+                    throw new BuildException(t);
+                } catch (IllegalAccessException e) {
+                    throw new BuildException(e);
+                }
+            }
+        }
+    }
 }
@@ -27,12 +27,42 @@ import org.apache.ant.props.DelegatingPropertyEvaluator;
  * treatment of condition processing.  Wants NestedPropertyExpander.
  */
 public class ConditionsEvaluator extends DelegatingPropertyEvaluator {
+    private final ConditionTypeEvaluator conditionTypeEvaluator = new ConditionTypeEvaluator();
+
     /**
      * Construct a new ConditionsEvaluator.
      */
     public ConditionsEvaluator() {
-        addDelegate(new ConditionTypeEvaluator());
+        addDelegate(conditionTypeEvaluator);
         addDelegate(new LogicalOperationEvaluator());
     }
 
+    /**
+     * Set whether to memoize condition outcomes.
+     * @param memoize boolean
+     * @see ConditionTypeEvaluator#setMemoize(boolean)
+     */
+    public void setMemoize(boolean memoize) {
+        conditionTypeEvaluator.setMemoize(memoize);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Typed conditions may depend on more than properties (e.g. files), so
+     * only the results of logical operations are cached; see
+     * {@link #setMemoize(boolean)} for typed conditions.
+     */
+    protected boolean isCacheable(String propertyName) {
+        return LogicalOperationEvaluator.canStartExpression(propertyName)
+                && !conditionTypeEvaluator.isConditionExpression(propertyName);
+    }
+
+    /**
+     * Get the ConditionTypeEvaluator delegate, e.g. for its memoization statistics.
+     * @return ConditionTypeEvaluator
+     */
+    public ConditionTypeEvaluator getConditionTypeEvaluator() {
+        return conditionTypeEvaluator;
+    }
+
 }
@@ -20,19 +20,75 @@
 package org.apache.ant.props;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Stack;
+import java.util.List;
 
 import org.apache.tools.ant.PropertyHelper;
 import org.apache.tools.ant.PropertyHelper.PropertyEvaluator;
 
 /**
- * Abstract delegating {@link PropertyEvaluator}.
+ * Abstract delegating {@link PropertyEvaluator}.  Results can optionally be
+ * cached until any of the properties read to compute them changes; see
+ * {@link ExpressionCache}.  Names none of the delegates' {@link NameFilter}s
+ * accepts are rejected without consulting them.
  */
-public abstract class DelegatingPropertyEvaluator implements PropertyHelper.PropertyEvaluator {
-    private final ThreadLocal stack = new ThreadLocal();
+public abstract class DelegatingPropertyEvaluator implements PropertyHelper.PropertyEvaluator,
+        NameFilter.Provider {
+    /**
+     * Names being evaluated by the current thread.  Kept per thread, so no
+     * locking; the outermost name needs no allocation.
+     */
+    private static final class Guard {
+        private String outermost;
+        private HashSet nested;
+
+        /**
+         * Enter the evaluation of a property.
+         * @param propertyName to evaluate
+         * @return <code>false</code> if already being evaluated
+         */
+        boolean enter(String propertyName) {
+            if (outermost == null) {
+                outermost = propertyName;
+                return true;
+            }
+            if (outermost.equals(propertyName)) {
+                return false;
+            }
+            if (nested == null) {
+                nested = new HashSet();
+            }
+            return nested.add(propertyName);
+        }
 
-    private ArrayList delegates = new ArrayList();
+        /**
+         * Leave the evaluation of a property entered successfully.
+         * @param propertyName evaluated
+         */
+        void exit(String propertyName) {
+            if (nested == null || !nested.remove(propertyName)) {
+                outermost = null;
+            }
+        }
+    }
+
+    private final ThreadLocal guard = new ThreadLocal() {
+        protected Object initialValue() {
+            return new Guard();
+        }
+    };
+
+    private final ArrayList delegates = new ArrayList();
+
+    private final List readOnlyDelegates = Collections.unmodifiableList(delegates);
+
+    private final ExpressionCache resultCache = new ExpressionCache(0);
+
+    private EvaluatorStatistics statistics;
+
+    private volatile NameFilter nameFilter;
 
     /**
      * Add a {@link PropertyEvaluator} delegate.
@@ -40,26 +96,130 @@ public abstract class DelegatingPropertyEvaluator implements PropertyHelper.Prop
      */
     protected void addDelegate(PropertyEvaluator propertyEvaluator) {
         delegates.add(propertyEvaluator);
+        nameFilter = null;
+    }
+
+    /**
+     * Get the delegates, in the order they were added.
+     * @return read-only List of PropertyEvaluator
+     */
+    protected List getDelegates() {
+        return readOnlyDelegates;
     }
 
     /**
      * {@inheritDoc}
      */
     public Object evaluate(String propertyName, PropertyHelper propertyHelper) {
-        if (getRequiredStack().contains(propertyName)) {
+        if (!getNameFilter().accepts(propertyName)) {
+            return null;
+        }
+        if (!EvaluatorStatistics.isEnabled()) {
+            return evaluateGuarded(propertyName, propertyHelper);
+        }
+        EvaluatorStatistics stats = getStatistics();
+        long start = System.nanoTime();
+        try {
+            return stats.record(start, evaluateGuarded(propertyName, propertyHelper));
+        } catch (RuntimeException e) {
+            stats.recordException(start);
+            throw e;
+        }
+    }
+
+    private Object evaluateGuarded(String propertyName, PropertyHelper propertyHelper) {
+        Guard g = (Guard) guard.get();
+        if (!g.enter(propertyName)) {
             return null;
         }
-        push(propertyName);
         try {
-            for (Iterator iter = delegates.iterator(); iter.hasNext();) {
-                Object value = ((PropertyEvaluator) iter.next()).evaluate(propertyName,
-                        propertyHelper);
-                if (value != null) {
-                    return value;
-                }
+            if (resultCache.isEnabled() && isCacheable(propertyName)) {
+                return resultCache.evaluate(this, propertyName, propertyHelper);
             }
+            return evaluateDelegates(propertyName, propertyHelper);
         } finally {
-            pop();
+            g.exit(propertyName);
+        }
+    }
+
+    private EvaluatorStatistics getStatistics() {
+        EvaluatorStatistics result = statistics;
+        if (result == null) {
+            result = EvaluatorStatistics.forClass(getClass());
+            statistics = result;
+        }
+        return result;
+    }
+
+    /**
+     * Get the conditions a property name must meet to be handled by any delegate.
+     * @return NameFilter
+     */
+    public NameFilter getNameFilter() {
+        NameFilter result = nameFilter;
+        if (result == null) {
+            result = createNameFilter();
+            nameFilter = result;
+        }
+        return result;
+    }
+
+    /**
+     * Create the conditions a property name must meet to be handled.  This
+     * implementation combines those of the delegates.
+     * @return NameFilter
+     */
+    protected NameFilter createNameFilter() {
+        NameFilter[] filters = new NameFilter[delegates.size()];
+        for (int i = 0; i < filters.length; i++) {
+            Object delegate = delegates.get(i);
+            filters[i] = delegate instanceof NameFilter.Provider
+                ? ((NameFilter.Provider) delegate).getNameFilter() : NameFilter.ANY;
+        }
+        return NameFilter.union(filters);
+    }
+
+    /**
+     * Set the maximum number of results to cache; default <code>0</code>, no caching.
+     * @param resultCacheSize int
+     */
+    public void setResultCacheSize(int resultCacheSize) {
+        resultCache.setMaxSize(resultCacheSize);
+    }
+
+    /**
+     * Get the cache of results, e.g. for its statistics.
+     * @return ExpressionCache
+     */
+    public ExpressionCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Learn whether the result for <code>propertyName</code> may be cached,
+     * i.e. depends on nothing but the text and the properties read to compute it.
+     * This implementation returns <code>true</code>.
+     * @param propertyName to evaluate
+     * @return boolean
+     */
+    protected boolean isCacheable(String propertyName) {
+        return true;
+    }
+
+    /**
+     * Consult the delegates in order, returning the first non-<code>null</code> result.
+     * Called with recursion protection for <code>propertyName</code> in place.
+     * @param propertyName to evaluate
+     * @param propertyHelper the calling PropertyHelper
+     * @return Object result or <code>null</code>
+     */
+    protected Object evaluateDelegates(String propertyName, PropertyHelper propertyHelper) {
+        for (Iterator iter = delegates.iterator(); iter.hasNext();) {
+            Object value = ((PropertyEvaluator) iter.next()).evaluate(propertyName,
+                    propertyHelper);
+            if (value != null) {
+                return value;
+            }
         }
         return null;
     }
@@ -83,27 +243,4 @@ public abstract class DelegatingPropertyEvaluator implements PropertyHelper.Prop
     public int hashCode() {
         return 17 * delegates.hashCode();
     }
-
-    private synchronized Stack getRequiredStack() {
-        Stack result = (Stack) stack.get();
-        if (result == null) {
-            result = new Stack();
-            stack.set(result);
-        }
-        return result;
-    }
-
-    private synchronized void push(String propertyName) {
-        getRequiredStack().push(propertyName);
-    }
-
-    private synchronized void pop() {
-        Stack stk = (Stack) stack.get();
-        if (stk != null) {
-            stk.pop();
-            if (stk.isEmpty()) {
-                stack.set(null);
-            }
-        }
-    }
 }
@@ -0,0 +1,509 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.types.Resource;
+import org.apache.tools.ant.types.ResourceCollection;
+import org.apache.tools.ant.types.resources.FileProvider;
+
+/**
+ * PropertyEvaluator that computes the digest of a file or of the resources of
+ * a referenced collection such as a fileset; syntax
+ * <code>digest:<em>algorithm</em>:<em>file-or-refid</em></code>, e.g.
+ * <code>digest:sha256:build.xml</code>.  The digest is given in lowercase
+ * hexadecimal digits, as by <code>&lt;checksum&gt;</code>.
+ *
+ * <p>Files are streamed through a <code>FileChannel</code>; those of a
+ * collection are hashed on several threads when there is enough to read.  The
+ * digest of a collection covers the names, in order, and digests of its
+ * resources, so that renaming a file changes it as well.  Digests of files are
+ * cached by path, length and modification time, optionally in a file kept from
+ * one build to the next.</p>
+ */
+public class DigestEvaluator extends StaticPrefixedEvaluator {
+    /** Default prefix */
+    public static final String DEFAULT_PREFIX = "digest";
+
+    /** Separates the algorithm from the file or reference */
+    private static final char ALGORITHM_SEPARATOR = ':';
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Bytes still to hash that are worth spreading over several threads */
+    private static final long PARALLEL_THRESHOLD = 1024 * 1024;
+
+    private static final int MAGIC = 0x44494743;
+
+    private static final int VERSION = 1;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal BUFFERS = new ThreadLocal() {
+        protected Object initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
+    private static final Comparator BY_NAME = new Comparator() {
+        public int compare(Object o1, Object o2) {
+            return ((Resource) o1).getName().compareTo(((Resource) o2).getName());
+        }
+    };
+
+    /**
+     * Digest of a file as it was when hashed.
+     */
+    private static final class Entry {
+        private final long length;
+        private final long lastModified;
+        private final byte[] digest;
+
+        Entry(long length, long lastModified, byte[] digest) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+    }
+
+    /**
+     * A file still to hash.
+     */
+    private static final class Pending {
+        private final File file;
+        private byte[] digest;
+
+        Pending(File file) {
+            this.file = file;
+        }
+    }
+
+    /** algorithm and path to Entry */
+    private final Map cache = new ConcurrentHashMap();
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private volatile File cacheFile;
+
+    private volatile boolean loaded;
+
+    private volatile boolean modified;
+
+    /** Project whose end is awaited to save the cache */
+    private volatile Project saving;
+
+    /**
+     * Create a new DigestEvaluator.
+     */
+    public DigestEvaluator() {
+        super(DEFAULT_PREFIX);
+    }
+
+    /**
+     * Set the file to keep digests in from one build to the next; by default
+     * they are kept for the build only.  The file is read on first use and
+     * written when the build finishes.
+     * @param cacheFile File
+     */
+    public void setCacheFile(File cacheFile) {
+        synchronized (cache) {
+            this.cacheFile = cacheFile;
+            loaded = false;
+        }
+    }
+
+    /**
+     * Set the maximum number of threads hashing the files of a collection;
+     * default the number of processors.
+     * @param threads int
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("invalid number of threads: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.apache.ant.props.PrefixedEvaluator#evaluate(java.lang.String,
+     *      java.lang.String, org.apache.tools.ant.PropertyHelper)
+     */
+    protected Object evaluate(String property, String prefix, PropertyHelper propertyHelper) {
+        int separator = property.indexOf(ALGORITHM_SEPARATOR);
+        if (separator <= 0) {
+            return null;
+        }
+        Project project = propertyHelper.getProject();
+        String algorithm;
+        try {
+            algorithm = createDigest(property.substring(0, separator)).getAlgorithm()
+                    .toUpperCase(Locale.ENGLISH);
+        } catch (NoSuchAlgorithmException e) {
+            project.log("Unknown digest algorithm " + property.substring(0, separator),
+                    Project.MSG_ERR);
+            return null;
+        }
+        String target = property.substring(separator + 1);
+        prepareCache(project);
+        try {
+            Object reference = project.getReference(target);
+            if (reference instanceof ResourceCollection) {
+                return toHex(digest((ResourceCollection) reference, algorithm));
+            }
+            File file = project.resolveFile(target);
+            if (!file.isFile()) {
+                project.log("File " + file + " not found", Project.MSG_WARN);
+                return null;
+            }
+            return toHex(digest(file, algorithm));
+        } catch (IOException e) {
+            project.log("Encountered exception computing " + algorithm + " digest of "
+                    + target + "; aborting", e, Project.MSG_ERR);
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            // it was found above:
+            throw new IllegalStateException(e.toString());
+        }
+    }
+
+    /**
+     * Get the digest of a file, from the cache if it has not changed.
+     */
+    private byte[] digest(File file, String algorithm) throws IOException,
+            NoSuchAlgorithmException {
+        byte[] result = getCached(file, algorithm);
+        if (result == null) {
+            result = hash(file, algorithm);
+        }
+        return result;
+    }
+
+    /**
+     * Get the digest of the names and digests of the resources of a collection.
+     */
+    private byte[] digest(ResourceCollection resources, final String algorithm)
+            throws IOException, NoSuchAlgorithmException {
+        Resource[] sorted = new Resource[resources.size()];
+        int n = 0;
+        for (Iterator iter = resources.iterator(); iter.hasNext();) {
+            sorted[n++] = (Resource) iter.next();
+        }
+        Arrays.sort(sorted, BY_NAME);
+
+        // look up what is cached, collecting the files still to hash:
+        Object[] digests = new Object[sorted.length];
+        List pending = new ArrayList();
+        long pendingLength = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            FileProvider fp = sorted[i].as(FileProvider.class);
+            if (fp == null) {
+                continue;
+            }
+            File file = fp.getFile();
+            byte[] cached = getCached(file, algorithm);
+            if (cached == null) {
+                Pending p = new Pending(file);
+                pending.add(p);
+                pendingLength += file.length();
+                digests[i] = p;
+            } else {
+                digests[i] = cached;
+            }
+        }
+        if (threads > 1 && pending.size() > 1 && pendingLength >= PARALLEL_THRESHOLD) {
+            hashInParallel(pending, algorithm);
+        } else {
+            for (Iterator iter = pending.iterator(); iter.hasNext();) {
+                Pending p = (Pending) iter.next();
+                p.digest = hash(p.file, algorithm);
+            }
+        }
+
+        MessageDigest result = createDigest(algorithm);
+        for (int i = 0; i < sorted.length; i++) {
+            result.update(sorted[i].getName().getBytes("UTF-8"));
+            result.update((byte) 0);
+            if (digests[i] instanceof Pending) {
+                result.update(((Pending) digests[i]).digest);
+            } else if (digests[i] != null) {
+                result.update((byte[]) digests[i]);
+            } else {
+                // not a file; read as a stream, uncached:
+                ReadableByteChannel channel = Channels.newChannel(sorted[i].getInputStream());
+                try {
+                    result.update(hash(channel, createDigest(algorithm)));
+                } finally {
+                    channel.close();
+                }
+            }
+        }
+        return result.digest();
+    }
+
+    private void hashInParallel(final List pending, final String algorithm)
+            throws IOException {
+        final AtomicInteger next = new AtomicInteger();
+        int n = Math.min(threads, pending.size());
+        ExecutorService executor = Executors.newFixedThreadPool(n);
+        try {
+            ArrayList futures = new ArrayList();
+            for (int t = 0; t < n; t++) {
+                futures.add(executor.submit(new Callable() {
+                    public Object call() throws Exception {
+                        for (int i = next.getAndIncrement(); i < pending.size();
+                                i = next.getAndIncrement()) {
+                            Pending p = (Pending) pending.get(i);
+                            p.digest = hash(p.file, algorithm);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Iterator iter = futures.iterator(); iter.hasNext();) {
+                try {
+                    ((Future) iter.next()).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted");
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause.toString());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Hash a file and cache its digest.
+     */
+    private byte[] hash(File file, String algorithm) throws IOException,
+            NoSuchAlgorithmException {
+        // as before reading, so that a change while reading is noticed next time:
+        long length = file.length();
+        long lastModified = file.lastModified();
+        FileInputStream in = new FileInputStream(file);
+        byte[] result;
+        try {
+            result = hash(in.getChannel(), createDigest(algorithm));
+        } finally {
+            in.close();
+        }
+        cache.put(algorithm + '\0' + file.getAbsolutePath(),
+                new Entry(length, lastModified, result));
+        modified = true;
+        return result;
+    }
+
+    private static byte[] hash(ReadableByteChannel channel, MessageDigest digest)
+            throws IOException {
+        ByteBuffer buffer = (ByteBuffer) BUFFERS.get();
+        buffer.clear();
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+        }
+        return digest.digest();
+    }
+
+    private byte[] getCached(File file, String algorithm) {
+        Entry entry = (Entry) cache.get(algorithm + '\0' + file.getAbsolutePath());
+        return entry != null && entry.length == file.length()
+            && entry.lastModified == file.lastModified() ? entry.digest : null;
+    }
+
+    /**
+     * Create a digest, accepting names such as <code>sha256</code> for <code>SHA-256</code>.
+     */
+    private static MessageDigest createDigest(String algorithm) throws NoSuchAlgorithmException {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            String name = algorithm.toUpperCase(Locale.ENGLISH);
+            int i = 0;
+            while (i < name.length() && Character.isLetter(name.charAt(i))) {
+                i++;
+            }
+            if (i == 0 || i == name.length() || !Character.isDigit(name.charAt(i))) {
+                throw e;
+            }
+            return MessageDigest.getInstance(name.substring(0, i) + '-' + name.substring(i));
+        }
+    }
+
+    private static String toHex(byte[] digest) {
+        char[] result = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            result[i * 2] = HEX[digest[i] >> 4 & 0xf];
+            result[i * 2 + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /**
+     * Load the cache file if not done yet, and see that it is saved when the
+     * build finishes.
+     */
+    private void prepareCache(Project project) {
+        if (cacheFile == null || loaded && saving == project) {
+            return;
+        }
+        synchronized (cache) {
+            if (cacheFile == null) {
+                return;
+            }
+            if (!loaded) {
+                loaded = true;
+                load(project);
+            }
+            if (saving != project) {
+                saving = project;
+                project.addBuildListener(new ProjectFinishedListener(project) {
+                    protected void finished(Project project) {
+                        save(project);
+                    }
+                });
+            }
+        }
+    }
+
+    private void load(Project project) {
+        if (!cacheFile.isFile()) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(cacheFile)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    project.log("Ignoring digest cache " + cacheFile + " of another format",
+                            Project.MSG_VERBOSE);
+                    return;
+                }
+                for (int count = in.readInt(); count > 0; count--) {
+                    String key = in.readUTF();
+                    long length = in.readLong();
+                    long lastModified = in.readLong();
+                    byte[] digest = new byte[in.readUnsignedByte()];
+                    in.readFully(digest);
+                    cache.put(key, new Entry(length, lastModified, digest));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            project.log("Could not read digest cache " + cacheFile + ": " + e.getMessage(),
+                    Project.MSG_WARN);
+        }
+    }
+
+    /**
+     * Save the cache if it was modified, leaving out the files that no longer exist.
+     */
+    private void save(Project project) {
+        synchronized (cache) {
+            if (cacheFile == null || !modified) {
+                return;
+            }
+            modified = false;
+            File tmp = null;
+            try {
+                List keys = new ArrayList();
+                for (Iterator iter = cache.keySet().iterator(); iter.hasNext();) {
+                    String key = (String) iter.next();
+                    if (new File(key.substring(key.indexOf('\0') + 1)).exists()) {
+                        keys.add(key);
+                    }
+                }
+                // uniquely named, as concurrent builds may share the cache:
+                tmp = File.createTempFile(cacheFile.getName(), ".tmp", cacheFile.getParentFile());
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(tmp)));
+                try {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeInt(keys.size());
+                    for (Iterator iter = keys.iterator(); iter.hasNext();) {
+                        String key = (String) iter.next();
+                        Entry entry = (Entry) cache.get(key);
+                        out.writeUTF(key);
+                        out.writeLong(entry.length);
+                        out.writeLong(entry.lastModified);
+                        out.writeByte(entry.digest.length);
+                        out.write(entry.digest);
+                    }
+                } finally {
+                    out.close();
+                }
+                if (!tmp.renameTo(cacheFile) && !(cacheFile.delete() && tmp.renameTo(cacheFile))) {
+                    throw new IOException("cannot rename " + tmp + " to " + cacheFile);
+                }
+            } catch (IOException e) {
+                if (tmp != null) {
+                    tmp.delete();
+                }
+                project.log("Could not save digest cache " + cacheFile + ": " + e.getMessage(),
+                        Project.MSG_WARN);
+            }
+        }
+    }
+}
@@ -19,6 +19,7 @@
  */
 package org.apache.ant.props;
 
+import java.io.File;
 import java.net.URI;
 import java.net.URL;
 
@@ -26,12 +27,117 @@ import org.apache.tools.ant.Project;
 import org.apache.tools.ant.PropertyHelper;
 
 /**
- * PropertyEvaluator that resolves a reference against the current project.
+ * PropertyEvaluator that encodes URL text as
+ * <code>new URI(protocol, userInfo, host, port, path, query, ref).toASCIIString()</code>
+ * would for the parts of <code>new URL(text)</code>.
+ *
+ * <p>ASCII URLs of the <code>http</code>, <code>https</code>, <code>ftp</code>
+ * and <code>file</code> protocols with a plain host name or IPv4 address are
+ * parsed and percent-encoded in a single pass; other text is still handed to
+ * <code>java.net</code>.  Results are cached per text.</p>
  */
 public class EncodeURLEvaluator extends StaticPrefixedEvaluator {
     /** Default prefix */
     public static final String DEFAULT_PREFIX = "encodeURL";
 
+    /** Default maximum number of cached results */
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    /** Protocols whose <code>java.net.URL</code> handlers parse the generic way */
+    private static final String[] GENERIC_PROTOCOLS = { "http", "https", "ftp", "file" };
+
+    /** Characters left alone in user info */
+    private static final int USERINFO = 1;
+
+    /** Characters left alone in the path */
+    private static final int PATH = 2;
+
+    /** Characters left alone in query and fragment */
+    private static final int URIC = 4;
+
+    /** Character classes of ASCII characters, per <code>java.net.URI</code> */
+    private static final byte[] CLASSES = new byte[128];
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    static {
+        String alphanum = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+        String unreserved = alphanum + "-_.!~*'()";
+        allow(unreserved + ";:&=+$,", USERINFO);
+        allow(unreserved + ":@&=+$,;/", PATH);
+        allow(unreserved + ";/?:@&=+$,[]", URIC);
+    }
+
+    /**
+     * Encoding failure detected without asking <code>java.net</code>.
+     */
+    private static final class Invalid {
+        private final String reason;
+
+        Invalid(String reason) {
+            this.reason = reason;
+        }
+    }
+
+    private static final Invalid NO_PROTOCOL = new Invalid("no protocol");
+
+    /**
+     * Unsynchronized output buffer, sized for the common case of little escaping.
+     */
+    private static final class Output {
+        private char[] chars;
+        private int length;
+
+        Output(int capacity) {
+            chars = new char[capacity];
+        }
+
+        void append(char c) {
+            ensureCapacity(length + 1);
+            chars[length++] = c;
+        }
+
+        void append(String s, int from, int to) {
+            ensureCapacity(length + to - from);
+            s.getChars(from, to, chars, length);
+            length += to - from;
+        }
+
+        /**
+         * Append a part of <code>s</code>, percent-encoding the characters not
+         * in the <code>allowed</code> class.
+         */
+        void append(String s, int from, int to, int allowed) {
+            ensureCapacity(length + to - from);
+            for (int i = from; i < to; i++) {
+                char c = s.charAt(i);
+                if ((CLASSES[c] & allowed) != 0) {
+                    chars[length++] = c;
+                } else {
+                    // the two extra characters:
+                    ensureCapacity(length + to - i + 2);
+                    chars[length++] = '%';
+                    chars[length++] = HEX[c >> 4];
+                    chars[length++] = HEX[c & 0xf];
+                }
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > chars.length) {
+                char[] newChars = new char[Math.max(capacity, chars.length * 2)];
+                System.arraycopy(chars, 0, newChars, 0, length);
+                chars = newChars;
+            }
+        }
+
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+
+    private final BoundedCache cache = new BoundedCache(DEFAULT_CACHE_SIZE);
+
     /**
      * Create a new EncodeURLEvaluator.
      */
@@ -39,6 +145,16 @@ public class EncodeURLEvaluator extends StaticPrefixedEvaluator {
         super(DEFAULT_PREFIX);
     }
 
+    /**
+     * Set the maximum number of results to cache; default {@link #DEFAULT_CACHE_SIZE},
+     * <code>0</code> disables caching.
+     * @param cacheSize int
+     */
+    public void setCacheSize(int cacheSize) {
+        cache.setMaxSize(cacheSize);
+        cache.clear();
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -46,15 +162,215 @@ public class EncodeURLEvaluator extends StaticPrefixedEvaluator {
      *      java.lang.String, org.apache.tools.ant.PropertyHelper)
      */
     protected Object evaluate(String property, String prefix, PropertyHelper propertyHelper) {
-        try {
-            URL url = new URL(property);
-            URI uri = new URI(url.getProtocol(), url.getUserInfo(),
-                     url.getHost(), url.getPort(), url.getPath(), url.getQuery(), url.getRef());
-            return uri.toASCIIString();
-        } catch (Exception e) {
-            propertyHelper.getProject().log("Encountered exception encoding URL text \""
-                    + property + "\"; aborting", e, Project.MSG_ERR);
+        Object result = cache.get(property);
+        if (result == null) {
+            result = encode(property);
+            if (result == null) {
+                try {
+                    result = encodeWithJavaNet(property);
+                } catch (Exception e) {
+                    propertyHelper.getProject().log("Encountered exception encoding URL text \""
+                            + property + "\"; aborting", e, Project.MSG_ERR);
+                    result = new Invalid(e.toString());
+                }
+            } else if (result instanceof Invalid) {
+                log(property, (Invalid) result, propertyHelper);
+            }
+            cache.put(property, result);
+        } else if (result instanceof Invalid) {
+            log(property, (Invalid) result, propertyHelper);
+        }
+        return result instanceof Invalid ? null : result;
+    }
+
+    private static void log(String property, Invalid invalid, PropertyHelper propertyHelper) {
+        propertyHelper.getProject().log("Unable to encode URL text \"" + property + "\" ("
+                + invalid.reason + "); aborting", Project.MSG_ERR);
+    }
+
+    private static String encodeWithJavaNet(String property) throws Exception {
+        URL url = new URL(property);
+        URI uri = new URI(url.getProtocol(), url.getUserInfo(),
+                 url.getHost(), url.getPort(), url.getPath(), url.getQuery(), url.getRef());
+        return uri.toASCIIString();
+    }
+
+    /**
+     * Encode URL text in a single pass.
+     * @param text to encode
+     * @return the encoded String, an {@link Invalid} or <code>null</code> to leave
+     *         <code>text</code> to <code>java.net</code>.
+     */
+    static Object encode(String text) {
+        int len = text.length();
+        if (len == 0 || text.charAt(0) <= ' ' || text.charAt(len - 1) <= ' '
+                || text.regionMatches(true, 0, "url:", 0, 4)) {
+            return null;
+        }
+        // protocol: up to the first ':', unless a '/' comes first
+        int colon = -1;
+        for (int i = 0; i < len; i++) {
+            char c = text.charAt(i);
+            if (c == ':') {
+                colon = i;
+                break;
+            }
+            if (c == '/') {
+                break;
+            }
+        }
+        if (colon < 0 || !isValidProtocol(text, colon)) {
+            return NO_PROTOCOL;
+        }
+        String protocol = null;
+        for (int i = 0; i < GENERIC_PROTOCOLS.length; i++) {
+            if (colon == GENERIC_PROTOCOLS[i].length()
+                    && text.regionMatches(true, 0, GENERIC_PROTOCOLS[i], 0, colon)) {
+                protocol = GENERIC_PROTOCOLS[i];
+                break;
+            }
+        }
+        if (protocol == null
+                || File.separatorChar != '/' && text.indexOf(File.separatorChar) >= 0) {
+            return null;
+        }
+        for (int i = colon + 1; i < len; i++) {
+            char c = text.charAt(i);
+            if (c < ' ' || c >= 0x7f) {
+                return null;
+            }
+        }
+        int hash = text.indexOf('#', colon + 1);
+        int end = hash < 0 ? len : hash;
+        int question = text.indexOf('?', colon + 1);
+        if (question >= end) {
+            question = -1;
+        }
+        int pathEnd = question < 0 ? end : question;
+
+        // only authority-based URLs; "////" starts a UNC path name
+        int authority = colon + 1;
+        if (pathEnd - authority < 3 || text.charAt(authority) != '/'
+                || text.charAt(authority + 1) != '/' || text.startsWith("//", authority + 2)) {
+            return null;
+        }
+        authority += 2;
+        int path = text.indexOf('/', authority);
+        if (path < 0 || path > pathEnd) {
+            path = pathEnd;
+        }
+        int at = text.indexOf('@', authority);
+        if (at >= path) {
+            at = -1;
+        } else if (text.indexOf('@', at + 1) >= 0 && text.indexOf('@', at + 1) < path) {
             return null;
         }
+        int host = at < 0 ? authority : at + 1;
+        int hostEnd = text.indexOf(':', host);
+        if (hostEnd < 0 || hostEnd > path) {
+            hostEnd = path;
+        }
+        if (!isHostName(text, host, hostEnd) || !isPort(text, hostEnd, path)) {
+            return null;
+        }
+        Output out = new Output(len + 16);
+        out.append(protocol, 0, protocol.length());
+        out.append(text, colon, authority);
+        if (at >= 0) {
+            out.append(text, authority, at, USERINFO);
+            out.append('@');
+        }
+        out.append(text, host, hostEnd);
+        // java.net.URL drops an empty port and leading zeros
+        if (path - hostEnd > 1) {
+            int port = hostEnd + 1;
+            while (port < path - 1 && text.charAt(port) == '0') {
+                port++;
+            }
+            out.append(':');
+            out.append(text, port, path);
+        }
+        out.append(text, path, pathEnd, PATH);
+        if (question >= 0) {
+            out.append('?');
+            out.append(text, question + 1, end, URIC);
+        }
+        if (hash >= 0) {
+            out.append('#');
+            out.append(text, hash + 1, len, URIC);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Mirrors <code>java.net.URL</code>: a letter followed by letters, digits,
+     * '+', '-' and '.'.
+     */
+    private static boolean isValidProtocol(String text, int end) {
+        if (end < 1 || !Character.isLetter(text.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < end; i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '.' && c != '+' && c != '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Learn whether <code>java.net.URI</code> certainly accepts a host name: dot-separated
+     * labels of letters, digits and inner '-', the last one starting with a letter.
+     * IPv4 addresses are left to <code>java.net</code>, as are host names it would reject.
+     */
+    private static boolean isHostName(String text, int from, int to) {
+        int lastLabel = -1;
+        int i = from;
+        while (i < to) {
+            if (!isAlphanumeric(text.charAt(i))) {
+                return false;
+            }
+            lastLabel = i;
+            while (++i < to && text.charAt(i) != '.') {
+                char c = text.charAt(i);
+                if (c != '-' && !isAlphanumeric(c)) {
+                    return false;
+                }
+            }
+            if (text.charAt(i - 1) == '-') {
+                return false;
+            }
+            // skip the '.', allowing a trailing one
+            i++;
+        }
+        return lastLabel >= 0 && !Character.isDigit(text.charAt(lastLabel));
+    }
+
+    /**
+     * Learn whether the text between the host and the path is nothing, a lone ':',
+     * or ':' followed by a port number of at most five digits.
+     */
+    private static boolean isPort(String text, int from, int to) {
+        if (to - from > 6) {
+            return false;
+        }
+        for (int i = from + 1; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAlphanumeric(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9';
+    }
+
+    private static void allow(String chars, int characterClass) {
+        for (int i = 0; i < chars.length(); i++) {
+            CLASSES[chars.charAt(i)] |= characterClass;
+        }
     }
 }
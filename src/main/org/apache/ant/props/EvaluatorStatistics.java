@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Attempt, match, <code>null</code>, exception and timing counters for one
+ * evaluator class, plus the JVM-wide registry of these.  Recording is off
+ * by default, in which case instrumented evaluators pay one volatile read per
+ * evaluation; switch it on with the <code>stats</code> task or by setting the
+ * system property <code>org.apache.ant.props.stats</code> to <code>true</code>.
+ *
+ * <p>Times are in nanoseconds and include the time spent in nested evaluations,
+ * so a delegating evaluator's time includes that of its delegates.  The latency
+ * histogram has power-of-two buckets: bucket <em>i</em> counts evaluations taking
+ * less than 2<sup><em>i</em></sup> ns but not less than 2<sup><em>i</em>-1</sup> ns.</p>
+ */
+public final class EvaluatorStatistics {
+    /** System property enabling recording from the start of the build */
+    public static final String ENABLE_PROPERTY = "org.apache.ant.props.stats";
+
+    /** Number of histogram buckets; the last one also counts anything slower */
+    public static final int BUCKETS = 40;
+
+    private static volatile boolean enabled = Boolean.getBoolean(ENABLE_PROPERTY);
+
+    /** evaluator Class to EvaluatorStatistics */
+    private static final Map REGISTRY = new HashMap();
+
+    private final String evaluatorClass;
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong matches = new AtomicLong();
+    private final AtomicLong nulls = new AtomicLong();
+    private final AtomicLong exceptions = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    private EvaluatorStatistics(String evaluatorClass) {
+        this.evaluatorClass = evaluatorClass;
+    }
+
+    /**
+     * Learn whether recording is on.
+     * @return boolean
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Switch recording on or off.  Counts recorded so far are kept.
+     * @param enabled boolean
+     */
+    public static void setEnabled(boolean enabled) {
+        EvaluatorStatistics.enabled = enabled;
+    }
+
+    /**
+     * Get the statistics of the specified evaluator class, creating them as needed.
+     * @param evaluatorClass Class
+     * @return EvaluatorStatistics
+     */
+    public static EvaluatorStatistics forClass(Class evaluatorClass) {
+        synchronized (REGISTRY) {
+            EvaluatorStatistics result = (EvaluatorStatistics) REGISTRY.get(evaluatorClass);
+            if (result == null) {
+                result = new EvaluatorStatistics(evaluatorClass.getName());
+                REGISTRY.put(evaluatorClass, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Get the statistics of all evaluator classes instrumented so far, ordered by
+     * decreasing total time.
+     * @return List of EvaluatorStatistics
+     */
+    public static List getAll() {
+        List result;
+        synchronized (REGISTRY) {
+            result = new ArrayList(REGISTRY.values());
+        }
+        Collections.sort(result, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                long t1 = ((EvaluatorStatistics) o1).getTotalNanos();
+                long t2 = ((EvaluatorStatistics) o2).getTotalNanos();
+                if (t1 != t2) {
+                    return t1 > t2 ? -1 : 1;
+                }
+                return ((EvaluatorStatistics) o1).evaluatorClass
+                        .compareTo(((EvaluatorStatistics) o2).evaluatorClass);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Zero the counters of all evaluator classes.
+     */
+    public static void resetAll() {
+        List all;
+        synchronized (REGISTRY) {
+            all = new ArrayList(REGISTRY.values());
+        }
+        for (int i = 0; i < all.size(); i++) {
+            ((EvaluatorStatistics) all.get(i)).reset();
+        }
+    }
+
+    /**
+     * Zero the counters.  Evaluations completing meanwhile may be partially counted.
+     */
+    public void reset() {
+        attempts.set(0);
+        matches.set(0);
+        nulls.set(0);
+        exceptions.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+    }
+
+    /**
+     * Record a completed evaluation.
+     * @param startNanos <code>System.nanoTime()</code> at the start of the evaluation
+     * @param result of the evaluation, possibly <code>null</code>
+     * @return <code>result</code>
+     */
+    public Object record(long startNanos, Object result) {
+        (result == null ? nulls : matches).incrementAndGet();
+        time(startNanos);
+        return result;
+    }
+
+    /**
+     * Record an evaluation that threw an exception.
+     * @param startNanos <code>System.nanoTime()</code> at the start of the evaluation
+     */
+    public void recordException(long startNanos) {
+        exceptions.incrementAndGet();
+        time(startNanos);
+    }
+
+    private void time(long startNanos) {
+        long nanos = Math.max(0L, System.nanoTime() - startNanos);
+        attempts.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        histogram.incrementAndGet(getBucket(nanos));
+        for (long max = maxNanos.get(); nanos > max; max = maxNanos.get()) {
+            if (maxNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Get the histogram bucket counting evaluations of the specified duration.
+     * @param nanos duration
+     * @return int bucket index
+     */
+    public static int getBucket(long nanos) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    /**
+     * Get the exclusive upper bound of a histogram bucket.
+     * @param bucket index
+     * @return long nanoseconds, <code>Long.MAX_VALUE</code> for the last bucket
+     */
+    public static long getBucketLimit(int bucket) {
+        return bucket < BUCKETS - 1 ? 1L << bucket : Long.MAX_VALUE;
+    }
+
+    /**
+     * Get the name of the evaluator class.
+     * @return String
+     */
+    public String getEvaluatorClass() {
+        return evaluatorClass;
+    }
+
+    /**
+     * Get the number of evaluations.
+     * @return long
+     */
+    public long getAttempts() {
+        return attempts.get();
+    }
+
+    /**
+     * Get the number of evaluations with a non-<code>null</code> result.
+     * @return long
+     */
+    public long getMatches() {
+        return matches.get();
+    }
+
+    /**
+     * Get the number of evaluations with a <code>null</code> result.
+     * @return long
+     */
+    public long getNulls() {
+        return nulls.get();
+    }
+
+    /**
+     * Get the number of evaluations that threw an exception.
+     * @return long
+     */
+    public long getExceptions() {
+        return exceptions.get();
+    }
+
+    /**
+     * Get the total time spent evaluating.
+     * @return long nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    /**
+     * Get the time of the slowest evaluation.
+     * @return long nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Get the number of evaluations counted by a histogram bucket.
+     * @param bucket index
+     * @return long
+     */
+    public long getHistogramCount(int bucket) {
+        return histogram.get(bucket);
+    }
+
+    /**
+     * Get the shortest duration at least the specified fraction of the evaluations
+     * took no longer than, to histogram precision.
+     * @param fraction between 0 and 1, e.g. <code>0.99</code>
+     * @return long nanoseconds (a bucket limit), <code>0</code> if nothing was recorded
+     */
+    public long getPercentile(double fraction) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= threshold && counts[i] > 0) {
+                return Math.min(getBucketLimit(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+}
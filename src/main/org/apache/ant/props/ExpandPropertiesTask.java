@@ -0,0 +1,657 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.PropertyHelper.PropertyEvaluator;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.property.GetProperty;
+import org.apache.tools.ant.property.ParseProperties;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Loads a properties file, expanding each value once, through the active
+ * PropertyHelper delegates, after the values of the other keys it refers to.
+ *
+ * <p>The file is read as a stream.  References between its keys are found by
+ * looking for key names, optionally followed by a string operation, right after
+ * <code>${</code>; the keys are then resolved in dependency order, and each value
+ * and each other expression is expanded once.  References the scan misses, e.g.
+ * computed ones, are resolved on demand.  While the file is loaded, its keys are
+ * visible to the delegates by their names in the file, even with a prefix.
+ * References that cannot be resolved and circular references are reported and
+ * left in place.  Properties already set keep their values.</p>
+ *
+ * <p>Optionally, groups of keys not referring to each other are resolved on
+ * several threads.  The outcome is the same as with one thread: a group found
+ * to read keys of another one after all is resolved again on its own, and
+ * properties are set and problems reported in file order.</p>
+ */
+public class ExpandPropertiesTask extends Task {
+    /** Operators of the string operations that may follow a key in a reference */
+    private static final String OPERATORS = ":#%/";
+
+    private static final byte NEW = 0;
+    private static final byte RESOLVING = 1;
+    private static final byte RESOLVED = 2;
+
+    private File file;
+    private String encoding = "ISO-8859-1";
+    private String prefix;
+    private boolean failOnError;
+    private int threads = 1;
+
+    /**
+     * Exposes the keys of the file being loaded on the current thread to the
+     * other delegates; one instance serves each PropertyHelper.
+     */
+    private static final class FileKeyEvaluator implements PropertyEvaluator {
+        private static final Map INSTANCES = new WeakHashMap();
+
+        /** Context of the current thread */
+        private final ThreadLocal current = new ThreadLocal();
+
+        static FileKeyEvaluator getInstance(PropertyHelper propertyHelper) {
+            synchronized (INSTANCES) {
+                FileKeyEvaluator result = (FileKeyEvaluator) INSTANCES.get(propertyHelper);
+                if (result == null) {
+                    result = new FileKeyEvaluator();
+                    propertyHelper.add(result);
+                    INSTANCES.put(propertyHelper, result);
+                }
+                return result;
+            }
+        }
+
+        public Object evaluate(String property, PropertyHelper propertyHelper) {
+            Context context = (Context) current.get();
+            return context == null ? null : context.resolver.resolveKey(property, context);
+        }
+    }
+
+    /**
+     * State of the resolution on one thread.
+     */
+    private static final class Context {
+        private final Resolver resolver;
+        /** the only component whose keys may be resolved, or -1 for any */
+        private final int component;
+        /** indexes of the keys being resolved */
+        private final ArrayList resolving = new ArrayList();
+        /** number of attempts to read keys of other components */
+        private int conflicts;
+
+        Context(Resolver resolver, int component) {
+            this.resolver = resolver;
+            this.component = component;
+        }
+    }
+
+    /**
+     * Resolves the keys of one file.  The reference graph is split into
+     * independent components, which may be resolved on several threads;
+     * a component that turns out to read keys of another one is resolved
+     * again afterwards, on the calling thread.  Values are published in
+     * file order once all are resolved.
+     */
+    private final class Resolver implements GetProperty {
+        private final PropertyHelper propertyHelper;
+        private final FileKeyEvaluator fileKeys;
+        private final ParseProperties parser;
+        private final String[] keys;
+        private final String[] rawValues;
+        private final Map indexes;
+        private final Object[] values;
+        private final byte[] states;
+        private final boolean[] existing;
+        /** component of each key */
+        private int[] components;
+        /** keys of each component, referenced keys first */
+        private int[][] members;
+        /** per component, Object[] { unresolved expression, index of first key referring to it } */
+        private ArrayList[] unresolved;
+        /** per component, circular reference paths */
+        private ArrayList[] cycles;
+        /** other expressions read, to their values */
+        private final Map expressions = Collections.synchronizedMap(new HashMap());
+
+        Resolver(PropertyHelper propertyHelper, Map entries) {
+            this.propertyHelper = propertyHelper;
+            fileKeys = FileKeyEvaluator.getInstance(propertyHelper);
+            parser = new ParseProperties(getProject(), propertyHelper.getExpanders(), this);
+            int n = entries.size();
+            keys = new String[n];
+            rawValues = new String[n];
+            indexes = new HashMap(n * 4 / 3 + 1);
+            int i = 0;
+            for (Iterator iter = entries.entrySet().iterator(); iter.hasNext(); i++) {
+                Map.Entry e = (Map.Entry) iter.next();
+                keys[i] = (String) e.getKey();
+                rawValues[i] = (String) e.getValue();
+                indexes.put(keys[i], Integer.valueOf(i));
+            }
+            values = new Object[n];
+            states = new byte[n];
+            existing = new boolean[n];
+            // properties already set keep their values:
+            for (i = 0; i < n; i++) {
+                Object value = propertyHelper.getProperty(getFullKey(keys[i]));
+                if (value != null) {
+                    values[i] = value;
+                    states[i] = RESOLVED;
+                    existing[i] = true;
+                }
+            }
+        }
+
+        /**
+         * Resolve all keys and set the properties.
+         * @param threads number of threads to use
+         */
+        void resolveAll(int threads) {
+            int[][] references = getReferences();
+            setComponents(references, getOrder(references));
+            unresolved = new ArrayList[members.length];
+            cycles = new ArrayList[members.length];
+            if (threads > 1 && members.length > 1) {
+                resolveInParallel(Math.min(threads, members.length));
+            } else {
+                Context context = new Context(this, -1);
+                Object outer = fileKeys.current.get();
+                fileKeys.current.set(context);
+                try {
+                    for (int c = 0; c < members.length; c++) {
+                        resolveComponent(c, context);
+                    }
+                } finally {
+                    fileKeys.current.set(outer);
+                }
+            }
+            for (int k = 0; k < keys.length; k++) {
+                if (!existing[k]) {
+                    propertyHelper.setNewProperty(getFullKey(keys[k]), values[k]);
+                }
+            }
+        }
+
+        private void resolveInParallel(int threads) {
+            final AtomicInteger next = new AtomicInteger();
+            final boolean[] conflicted = new boolean[members.length];
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                ArrayList futures = new ArrayList();
+                for (int t = 0; t < threads; t++) {
+                    futures.add(executor.submit(new Callable() {
+                        public Object call() {
+                            try {
+                                for (int c = next.getAndIncrement(); c < members.length;
+                                        c = next.getAndIncrement()) {
+                                    Context context = new Context(Resolver.this, c);
+                                    fileKeys.current.set(context);
+                                    resolveComponent(c, context);
+                                    conflicted[c] = context.conflicts > 0;
+                                }
+                            } finally {
+                                fileKeys.current.set(null);
+                            }
+                            return null;
+                        }
+                    }));
+                }
+                for (Iterator iter = futures.iterator(); iter.hasNext();) {
+                    try {
+                        ((Future) iter.next()).get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new BuildException("Interrupted", e, getLocation());
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof RuntimeException) {
+                            throw (RuntimeException) cause;
+                        }
+                        if (cause instanceof Error) {
+                            throw (Error) cause;
+                        }
+                        throw new BuildException(cause, getLocation());
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            // start over with the components that read keys of others:
+            for (int c = 0; c < members.length; c++) {
+                if (conflicted[c]) {
+                    unresolved[c] = null;
+                    cycles[c] = null;
+                    for (int i = 0; i < members[c].length; i++) {
+                        int k = members[c][i];
+                        if (!existing[k]) {
+                            values[k] = null;
+                            states[k] = NEW;
+                        }
+                    }
+                }
+            }
+            Context context = new Context(this, -1);
+            Object outer = fileKeys.current.get();
+            fileKeys.current.set(context);
+            try {
+                for (int c = 0; c < members.length; c++) {
+                    if (conflicted[c]) {
+                        resolveComponent(c, context);
+                    }
+                }
+            } finally {
+                fileKeys.current.set(outer);
+            }
+        }
+
+        private void resolveComponent(int c, Context context) {
+            for (int i = 0; i < members[c].length; i++) {
+                resolve(members[c][i], context);
+            }
+        }
+
+        /**
+         * Find the references from each value to other keys.
+         */
+        private int[][] getReferences() {
+            int[][] result = new int[keys.length][];
+            int[] found = new int[16];
+            for (int k = 0; k < keys.length; k++) {
+                if (states[k] == RESOLVED) {
+                    continue;
+                }
+                String raw = rawValues[k];
+                int count = 0;
+                for (int ref = raw.indexOf("${"); ref >= 0; ref = raw.indexOf("${", ref + 2)) {
+                    int start = ref + 2;
+                    int end = start;
+                    while (end < raw.length() && raw.charAt(end) != '}' && raw.charAt(end) != '$') {
+                        end++;
+                    }
+                    for (int i = start; i <= end; i++) {
+                        if (i < end && OPERATORS.indexOf(raw.charAt(i)) < 0) {
+                            continue;
+                        }
+                        Integer index = (Integer) indexes.get(raw.substring(start, i));
+                        if (index != null) {
+                            if (count == found.length) {
+                                int[] grown = new int[count * 2];
+                                System.arraycopy(found, 0, grown, 0, count);
+                                found = grown;
+                            }
+                            found[count++] = index.intValue();
+                        }
+                    }
+                }
+                if (count > 0) {
+                    result[k] = new int[count];
+                    System.arraycopy(found, 0, result[k], 0, count);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Order the keys so that referenced keys come first, by iterative depth-first
+         * search; references closing a cycle are ignored here.
+         */
+        private int[] getOrder(int[][] references) {
+            int n = keys.length;
+            int[] result = new int[n];
+            int size = 0;
+            byte[] visited = new byte[n];
+            int[] stack = new int[n];
+            int[] next = new int[n];
+            for (int root = 0; root < n; root++) {
+                if (visited[root] != 0) {
+                    continue;
+                }
+                int depth = 0;
+                stack[0] = root;
+                next[0] = 0;
+                visited[root] = 1;
+                while (depth >= 0) {
+                    int k = stack[depth];
+                    int[] refs = references[k];
+                    if (refs != null && next[depth] < refs.length) {
+                        int ref = refs[next[depth]++];
+                        if (visited[ref] == 0) {
+                            visited[ref] = 1;
+                            stack[++depth] = ref;
+                            next[depth] = 0;
+                        }
+                        continue;
+                    }
+                    result[size++] = k;
+                    depth--;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Split the keys into the connected components of the reference graph,
+         * numbered in order of their first key in <code>order</code>.
+         */
+        private void setComponents(int[][] references, int[] order) {
+            int n = keys.length;
+            int[] parent = new int[n];
+            for (int k = 0; k < n; k++) {
+                parent[k] = k;
+            }
+            for (int k = 0; k < n; k++) {
+                if (references[k] != null) {
+                    for (int i = 0; i < references[k].length; i++) {
+                        int a = find(parent, k);
+                        int b = find(parent, references[k][i]);
+                        if (a != b) {
+                            parent[Math.max(a, b)] = Math.min(a, b);
+                        }
+                    }
+                }
+            }
+            components = new int[n];
+            int[] numbers = new int[n];
+            int[] sizes = new int[n];
+            int count = 0;
+            Arrays.fill(numbers, -1);
+            for (int i = 0; i < n; i++) {
+                int root = find(parent, order[i]);
+                if (numbers[root] < 0) {
+                    numbers[root] = count++;
+                }
+                components[order[i]] = numbers[root];
+                sizes[numbers[root]]++;
+            }
+            members = new int[count][];
+            for (int c = 0; c < count; c++) {
+                members[c] = new int[sizes[c]];
+                sizes[c] = 0;
+            }
+            for (int i = 0; i < n; i++) {
+                int c = components[order[i]];
+                members[c][sizes[c]++] = order[i];
+            }
+        }
+
+        private int find(int[] parent, int k) {
+            while (parent[k] != k) {
+                parent[k] = parent[parent[k]];
+                k = parent[k];
+            }
+            return k;
+        }
+
+        /**
+         * Resolve a key of the file.
+         * @return its value, <code>null</code> if it is being resolved or not a key
+         */
+        Object resolveKey(String name, Context context) {
+            Integer index = (Integer) indexes.get(name);
+            return index == null ? null : resolve(index.intValue(), context);
+        }
+
+        private Object resolve(int k, Context context) {
+            if (existing[k]) {
+                return values[k];
+            }
+            if (context.component >= 0 && components[k] != context.component) {
+                context.conflicts++;
+                return null;
+            }
+            if (states[k] == RESOLVED) {
+                return values[k];
+            }
+            if (states[k] == RESOLVING) {
+                StringBuffer sb = new StringBuffer();
+                for (int i = context.resolving.indexOf(Integer.valueOf(k));
+                        i < context.resolving.size(); i++) {
+                    sb.append(keys[((Integer) context.resolving.get(i)).intValue()]);
+                    sb.append(" -> ");
+                }
+                record(cycles, context, sb.append(keys[k]).toString());
+                return null;
+            }
+            states[k] = RESOLVING;
+            context.resolving.add(Integer.valueOf(k));
+            try {
+                values[k] = parser.parseProperties(rawValues[k]);
+                return values[k];
+            } finally {
+                context.resolving.remove(context.resolving.size() - 1);
+                states[k] = RESOLVED;
+            }
+        }
+
+        /**
+         * Add to the records of the component of the key being resolved.
+         */
+        private void record(ArrayList[] records, Context context, Object o) {
+            int k = ((Integer) context.resolving.get(context.resolving.size() - 1)).intValue();
+            if (records[components[k]] == null) {
+                records[components[k]] = new ArrayList();
+            }
+            records[components[k]].add(o);
+        }
+
+        /**
+         * Get the value of an expression found in a value of the file.
+         * {@inheritDoc}
+         */
+        public Object getProperty(String name) {
+            Context context = (Context) fileKeys.current.get();
+            Integer index = (Integer) indexes.get(name);
+            if (index != null) {
+                return resolve(index.intValue(), context);
+            }
+            Object result = expressions.get(name);
+            if (result == null) {
+                result = propertyHelper.getProperty(name);
+                if (result == null) {
+                    if (!context.resolving.isEmpty()) {
+                        record(unresolved, context, new Object[] {name,
+                                context.resolving.get(context.resolving.size() - 1)});
+                    }
+                } else if (context.conflicts == 0) {
+                    // once a conflict occurred, keys of this component may hold wrong values
+                    expressions.put(name, result);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Get the unresolved expressions, each with the first key referring to it.
+         * @return Map of String to String, in file order of the keys
+         */
+        Map getUnresolved() {
+            TreeMap byKey = new TreeMap();
+            for (int c = 0; c < unresolved.length; c++) {
+                if (unresolved[c] == null) {
+                    continue;
+                }
+                for (Iterator iter = unresolved[c].iterator(); iter.hasNext();) {
+                    Object[] u = (Object[]) iter.next();
+                    Integer key = (Integer) u[1];
+                    ArrayList names = (ArrayList) byKey.get(key);
+                    if (names == null) {
+                        names = new ArrayList();
+                        byKey.put(key, names);
+                    }
+                    names.add(u[0]);
+                }
+            }
+            LinkedHashMap result = new LinkedHashMap();
+            for (Iterator iter = byKey.entrySet().iterator(); iter.hasNext();) {
+                Map.Entry e = (Map.Entry) iter.next();
+                String key = keys[((Integer) e.getKey()).intValue()];
+                for (Iterator names = ((ArrayList) e.getValue()).iterator(); names.hasNext();) {
+                    Object name = names.next();
+                    if (!result.containsKey(name)) {
+                        result.put(name, key);
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Get the circular reference paths found.
+         * @return List of String
+         */
+        List getCycles() {
+            ArrayList result = new ArrayList();
+            for (int c = 0; c < cycles.length; c++) {
+                if (cycles[c] != null) {
+                    result.addAll(cycles[c]);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Set the properties file to load.
+     * @param file File
+     */
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Set the encoding of the file; default ISO-8859-1, as for
+     * <code>java.util.Properties</code>.
+     * @param encoding String
+     */
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * Set a prefix for the names of the properties set.  References within
+     * the file use the names without it.
+     * @param prefix String
+     */
+    public void setPrefix(String prefix) {
+        if (prefix != null && !prefix.endsWith(".")) {
+            prefix += ".";
+        }
+        this.prefix = prefix;
+    }
+
+    /**
+     * Set the number of threads resolving independent groups of keys; default 1.
+     * The evaluators in use must be safe for concurrent use, as those of this
+     * library are.
+     * @param threads int
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new BuildException("threads must be positive", getLocation());
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Set whether unresolved and circular references fail the build, after all
+     * properties have been set; default <code>false</code>.
+     * @param failOnError boolean
+     */
+    public void setFailOnError(boolean failOnError) {
+        this.failOnError = failOnError;
+    }
+
+    /** {@inheritDoc} */
+    public void execute() {
+        if (file == null) {
+            throw new BuildException("file is required", getLocation());
+        }
+        Map entries = readEntries();
+        Resolver resolver = new Resolver(PropertyHelper.getPropertyHelper(getProject()), entries);
+        resolver.resolveAll(threads);
+        log("Loaded " + entries.size() + " properties from " + file, Project.MSG_VERBOSE);
+        Map unresolved = resolver.getUnresolved();
+        for (Iterator iter = unresolved.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry e = (Map.Entry) iter.next();
+            log("Unresolved reference ${" + e.getKey() + "} in " + e.getValue(), Project.MSG_WARN);
+        }
+        List cycles = resolver.getCycles();
+        for (Iterator iter = cycles.iterator(); iter.hasNext();) {
+            log("Circular reference " + iter.next(), Project.MSG_WARN);
+        }
+        if (failOnError && (!unresolved.isEmpty() || !cycles.isEmpty())) {
+            throw new BuildException(unresolved.size() + " unresolved and "
+                    + cycles.size() + " circular references in " + file, getLocation());
+        }
+    }
+
+    private Map readEntries() {
+        LinkedHashMap result = new LinkedHashMap();
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            Reader reader = Channels.newReader(channel, encoding);
+            PropertiesFileReader entries = new PropertiesFileReader(reader);
+            while (entries.next()) {
+                result.put(entries.getKey(), entries.getValue());
+            }
+        } catch (IOException e) {
+            throw new BuildException("Unable to read " + file, e, getLocation());
+        } catch (IllegalArgumentException e) {
+            throw new BuildException("Unable to read " + file + ": " + e.getMessage(), e,
+                    getLocation());
+        } finally {
+            FileUtils.close(in);
+        }
+        return result;
+    }
+
+    private String getFullKey(String key) {
+        return prefix == null ? key : prefix + key;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tools.ant.PropertyHelper;
+
+/**
+ * Size-bounded, approximately least-recently-used cache of the results of a
+ * {@link DelegatingPropertyEvaluator}, keyed by property name.  Each result
+ * remembers the properties read while computing it, with their values, and is
+ * only reused while all of them still have the same values; so any way of
+ * changing a property (<code>setNewProperty</code>, user properties, local
+ * properties going out of scope) invalidates the results depending on it.
+ * Keeps hit, miss and eviction counts to help size it.  Lookups take no
+ * lock, see {@link BoundedCache}.
+ */
+public class ExpressionCache {
+    /** Default maximum number of entries */
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    private static final class Entry {
+        private final PropertyHelper propertyHelper;
+        private final Object value;
+        private final String[] inputs;
+        private final Object[] inputValues;
+
+        Entry(PropertyHelper propertyHelper, Object value, String[] inputs,
+                Object[] inputValues) {
+            this.propertyHelper = propertyHelper;
+            this.value = value;
+            this.inputs = inputs;
+            this.inputValues = inputValues;
+        }
+
+        /**
+         * Learn whether the inputs still have the same values.  The inputs
+         * are read again through the PropertyHelper, so any recording in
+         * progress picks them up as dependencies of its own.
+         */
+        boolean isValid(PropertyHelper propertyHelper) {
+            if (propertyHelper != this.propertyHelper) {
+                return false;
+            }
+            for (int i = 0; i < inputs.length; i++) {
+                Object current = propertyHelper.getProperty(inputs[i]);
+                if (current == null ? inputValues[i] != null : !current.equals(inputValues[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final BoundedCache entries;
+
+    /** Recorder of the PropertyHelper last used */
+    private volatile PropertyReadRecorder recorder;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a new ExpressionCache of {@link #DEFAULT_MAX_SIZE}.
+     */
+    public ExpressionCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Create a new ExpressionCache.
+     * @param maxSize the maximum number of entries
+     */
+    public ExpressionCache(int maxSize) {
+        entries = new BoundedCache(maxSize);
+    }
+
+    /**
+     * Learn whether this cache may hold any entries.
+     * @return boolean
+     */
+    boolean isEnabled() {
+        return entries.getMaxSize() > 0;
+    }
+
+    /**
+     * Evaluate a property through the delegates of <code>evaluator</code>,
+     * reusing a still valid result.
+     * @param evaluator DelegatingPropertyEvaluator
+     * @param propertyName to evaluate
+     * @param propertyHelper the calling PropertyHelper
+     * @return Object result or <code>null</code>
+     */
+    Object evaluate(DelegatingPropertyEvaluator evaluator, String propertyName,
+            PropertyHelper propertyHelper) {
+        Entry entry = (Entry) entries.get(propertyName);
+        if (entry != null && entry.isValid(propertyHelper)) {
+            hits.incrementAndGet();
+            return entry.value;
+        }
+        PropertyReadRecorder recorder = this.recorder;
+        if (recorder == null || recorder.getPropertyHelper() != propertyHelper) {
+            recorder = PropertyReadRecorder.getInstance(propertyHelper);
+            this.recorder = recorder;
+        }
+        PropertyReadRecorder.Recording recording = recorder.start();
+        Object result;
+        try {
+            result = evaluator.evaluateDelegates(propertyName, propertyHelper);
+        } finally {
+            recorder.stop(recording);
+        }
+        if (result != null) {
+            String[] inputs = recording.getNames();
+            Object[] inputValues = new Object[inputs.length];
+            for (int i = 0; i < inputs.length; i++) {
+                inputValues[i] = propertyHelper.getProperty(inputs[i]);
+            }
+            misses.incrementAndGet();
+            entries.put(propertyName, new Entry(propertyHelper, result, inputs, inputValues));
+        }
+        return result;
+    }
+
+    /**
+     * Set the maximum number of entries; <code>0</code> disables caching.
+     * @param maxSize int
+     */
+    public void setMaxSize(int maxSize) {
+        entries.setMaxSize(maxSize);
+    }
+
+    /**
+     * Get the maximum number of entries.
+     * @return int
+     */
+    public int getMaxSize() {
+        return entries.getMaxSize();
+    }
+
+    /**
+     * Get the current number of entries.
+     * @return int
+     */
+    public int getSize() {
+        return entries.getSize();
+    }
+
+    /**
+     * Get the number of evaluations answered from the cache.
+     * @return long
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of results computed, i.e. not found in the cache.
+     * @return long
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of entries evicted to honor the maximum size.
+     * @return long
+     */
+    public long getEvictions() {
+        return entries.getEvictions();
+    }
+
+    /**
+     * Remove all entries and reset the statistics.
+     */
+    public void clear() {
+        entries.clear();
+        hits.set(0);
+        misses.set(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String toString() {
+        return "ExpressionCache[size=" + getSize() + "/" + getMaxSize() + ", hits=" + getHits()
+                + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+    }
+}
@@ -16,8 +16,6 @@
  */
 package org.apache.ant.props;
 
-import java.util.regex.Pattern;
-
 import org.apache.tools.ant.PropertyHelper;
 import org.apache.tools.ant.PropertyHelper.PropertyEvaluator;
 
@@ -30,57 +28,110 @@ import org.apache.tools.ant.PropertyHelper.PropertyEvaluator;
  * conditions to <code>true</code> or <code>false</code>, allowing them to be
  * processed by this little fellow.
  * 
- * Grouping can be accomplished by means of nested property expressions.
+ * Grouping can be accomplished by means of parentheses or nested property expressions.
+ * Parsed expressions are cached by their text, as are names found not to be
+ * expressions.
  */
-public class LogicalOperationEvaluator extends RegexBasedEvaluator {
-    private static final String BOOL = "(?:true|false)";
-    private static final String NEGATED_BOOL = "!" + BOOL;
-    private static final String EXPR = "(?:" + BOOL + "|" + NEGATED_BOOL + ")";
-    private static final String AND = "[\\s]*(?:&|\\+)[\\s]*";
-    private static final Pattern AND_PATTERN = Pattern.compile(AND);
-    private static final String XOR = "[\\s]*\\^[\\s]*";
-    private static final Pattern XOR_PATTERN = Pattern.compile(XOR);
-    private static final String OR = "[\\s]*\\|[\\s]*";
-    private static final Pattern OR_PATTERN = Pattern.compile(OR);
-    private static final String OP = "(?:" + AND + "|" + XOR + "|" + OR + ")" + EXPR;
+public class LogicalOperationEvaluator implements PropertyEvaluator, NameFilter.Provider {
+    /** Default maximum number of cached expressions */
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    /** Characters an expression can start with */
+    private static final String START_CHARACTERS = "tf!( \t\n\u000B\f\r";
+
+    private static final NameFilter NAME_FILTER = NameFilter.startingWithAny(START_CHARACTERS);
+
+    /** Cached for names that are no expressions */
+    private static final Object NO_EXPRESSION = new Object();
 
-    // we accept a pattern of either EXPR OP EXPR (OP EXPR)* | NEGATED_BOOL (without op)
-    private static final String PATTERN = "^" + "(?:" + EXPR + OP + "(?:" + OP + ")*)|"
-            + NEGATED_BOOL + "$";
+    private final BoundedCache cache = new BoundedCache(DEFAULT_CACHE_SIZE);
+
+    private EvaluatorStatistics statistics;
 
     /**
-     * Create a new LogicalOperationEvaluator instance.
+     * {@inheritDoc}
      */
-    public LogicalOperationEvaluator() {
-        super(PATTERN);
+    public Object evaluate(String propertyName, PropertyHelper propertyHelper) {
+        if (!EvaluatorStatistics.isEnabled()) {
+            return evaluateName(propertyName, propertyHelper);
+        }
+        EvaluatorStatistics stats = getStatistics();
+        long start = System.nanoTime();
+        try {
+            return stats.record(start, evaluateName(propertyName, propertyHelper));
+        } catch (RuntimeException e) {
+            stats.recordException(start);
+            throw e;
+        }
+    }
+
+    private Object evaluateName(String propertyName, PropertyHelper propertyHelper) {
+        BooleanExpression expression = getExpression(propertyName);
+        return expression == null ? null : Boolean.valueOf(expression.evaluate());
     }
 
     /**
      * {@inheritDoc}
      */
-    protected Object evaluate(String[] groups, PropertyHelper propertyHelper) {
-        boolean result = false;
-        String[] or = OR_PATTERN.split(groups[0]);
-        for (int o = 0; !result && o < or.length; o++) {
-            boolean accumXor = false;
-            String[] xor = XOR_PATTERN.split(or[o]);
-            for (int x = 0; x < xor.length; x++) {
-                boolean accumAnd = true;
-                String[] and = AND_PATTERN.split(xor[x]);
-                for (int a = 0; accumAnd && a < and.length; a++) {
-                    boolean negate = false;
-                    String expr = and[a];
-                    if (expr.charAt(0) == '!') {
-                        negate = true;
-                        expr = expr.substring(1);
-                    }
-                    boolean b = Boolean.valueOf(expr.trim().toLowerCase()).booleanValue() ^ negate;
-                    accumAnd &= b;
-                }
-                accumXor ^= accumAnd;
-            }
-            result |= accumXor;
+    public NameFilter getNameFilter() {
+        return NAME_FILTER;
+    }
+
+    private EvaluatorStatistics getStatistics() {
+        EvaluatorStatistics result = statistics;
+        if (result == null) {
+            result = EvaluatorStatistics.forClass(getClass());
+            statistics = result;
+        }
+        return result;
+    }
+
+    /**
+     * Set the maximum number of parsed expressions to cache; <code>0</code>
+     * disables caching.
+     * @param cacheSize int
+     */
+    public void setCacheSize(int cacheSize) {
+        cache.setMaxSize(cacheSize);
+        cache.clear();
+    }
+
+    private BooleanExpression getExpression(String propertyName) {
+        if (!canStartExpression(propertyName)) {
+            return null;
+        }
+        Object cached = cache.get(propertyName);
+        if (cached != null) {
+            return cached == NO_EXPRESSION ? null : (BooleanExpression) cached;
+        }
+        BooleanExpression result = BooleanExpression.parse(propertyName);
+        cache.put(propertyName, result == null ? NO_EXPRESSION : result);
+        return result;
+    }
+
+    /**
+     * Cheap check of the first character of a would-be expression.
+     * @param s property name
+     * @return <code>false</code> if <code>s</code> cannot be a logical expression
+     */
+    static boolean canStartExpression(String s) {
+        if (s.length() == 0) {
+            return false;
+        }
+        switch (s.charAt(0)) {
+        case 't':
+        case 'f':
+        case '!':
+        case '(':
+        case ' ':
+        case '\t':
+        case '\n':
+        case '\u000B':
+        case '\f':
+        case '\r':
+            return true;
+        default:
+            return false;
         }
-        return Boolean.valueOf(result);
     }
 }
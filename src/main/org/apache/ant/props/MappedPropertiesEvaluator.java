@@ -0,0 +1,382 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.PropertyHelper;
+
+/**
+ * PropertyEvaluator that looks up keys of properties files without loading
+ * them; syntax <code>mmprops:<em>file</em>#<em>key</em></code>.
+ *
+ * <p>A store file is memory-mapped, as is a sorted index of its keys kept
+ * next to it as <code><em>file</em>.idx</code>, which is built on first use
+ * and again whenever the file changes.  A lookup is a binary search of the
+ * index; only the value found is decoded.  Files are read as ISO-8859-1, as by
+ * <code>java.util.Properties.load(InputStream)</code>, and may not exceed 2 GB.</p>
+ */
+public class MappedPropertiesEvaluator extends StaticPrefixedEvaluator {
+    /** Default prefix */
+    public static final String DEFAULT_PREFIX = "mmprops";
+
+    /** Appended to the store file name to name its index */
+    public static final String INDEX_SUFFIX = ".idx";
+
+    /** Separates the file from the key */
+    private static final char KEY_SEPARATOR = '#';
+
+    private static final int MAGIC = 0x4d4d5049;
+
+    private static final int VERSION = 1;
+
+    /** Magic, version, store length and modification time, key count */
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+
+    /** Key offset and length in characters, entry offset */
+    private static final int ENTRY_SIZE = 4 + 4 + 8;
+
+    /** Mapped stores by file name as given */
+    private final Map stores = new ConcurrentHashMap();
+
+    /**
+     * A mapped store file and its mapped index.
+     */
+    private static final class Store {
+        private final File file;
+        private final long length;
+        private final long lastModified;
+        private final ByteBuffer data;
+        private final ByteBuffer index;
+        private final int count;
+        private final int keys;
+
+        Store(File file, long length, long lastModified, ByteBuffer data, ByteBuffer index) {
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.data = data;
+            this.index = index;
+            this.count = index.getInt(HEADER_SIZE - 4);
+            this.keys = HEADER_SIZE + count * ENTRY_SIZE;
+        }
+
+        /**
+         * Learn whether the file has not changed.  Checked on every lookup, as
+         * reading beyond the end of a mapped file truncated since is fatal.
+         */
+        boolean isCurrent() {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+
+        /**
+         * Find the entry offset of a key.
+         * @return offset or <code>-1</code>
+         */
+        long find(String key) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int entry = HEADER_SIZE + mid * ENTRY_SIZE;
+                int cmp = compare(index.getInt(entry), index.getInt(entry + 4), key);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return index.getLong(entry + 8);
+                }
+            }
+            return -1;
+        }
+
+        private int compare(int offset, int length, String key) {
+            int base = keys + offset * 2;
+            int n = Math.min(length, key.length());
+            for (int i = 0; i < n; i++) {
+                int cmp = index.getChar(base + i * 2) - key.charAt(i);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return length - key.length();
+        }
+
+        /**
+         * Decode the value of the entry at <code>offset</code>.
+         */
+        String read(long offset) throws IOException {
+            int start = (int) offset;
+            int end = start;
+            for (int limit = data.limit(); end < limit; end++) {
+                byte b = data.get(end);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                if (b == '\\') {
+                    return readEscaped(offset);
+                }
+            }
+            // a single line without escapes, split as PropertiesFileReader does:
+            int valueStart = start;
+            boolean hasSeparator = false;
+            while (valueStart < end) {
+                byte b = data.get(valueStart++);
+                if (b == '=' || b == ':') {
+                    hasSeparator = true;
+                    break;
+                }
+                if (isWhitespace(b)) {
+                    break;
+                }
+            }
+            for (; valueStart < end; valueStart++) {
+                byte b = data.get(valueStart);
+                if (!isWhitespace(b)) {
+                    if (hasSeparator || b != '=' && b != ':') {
+                        break;
+                    }
+                    hasSeparator = true;
+                }
+            }
+            char[] chars = new char[end - valueStart];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) (data.get(valueStart + i) & 0xff);
+            }
+            return new String(chars);
+        }
+
+        private String readEscaped(long offset) throws IOException {
+            ByteBuffer buffer = data.duplicate();
+            buffer.position((int) offset);
+            // values are mostly short; don't decode more than needed:
+            PropertiesFileReader reader = new PropertiesFileReader(new Latin1Reader(buffer), 256);
+            return reader.next() ? reader.getValue() : null;
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\f';
+    }
+
+    /**
+     * Reads the bytes of a buffer as ISO-8859-1 characters.
+     */
+    private static final class Latin1Reader extends Reader {
+        private final ByteBuffer buffer;
+        private byte[] bytes;
+
+        Latin1Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public int read(char[] cbuf, int off, int len) {
+            int n = Math.min(len, buffer.remaining());
+            if (n == 0) {
+                return len == 0 ? 0 : -1;
+            }
+            if (bytes == null || bytes.length < n) {
+                bytes = new byte[n];
+            }
+            buffer.get(bytes, 0, n);
+            for (int i = 0; i < n; i++) {
+                cbuf[off + i] = (char) (bytes[i] & 0xff);
+            }
+            return n;
+        }
+
+        public void close() {
+        }
+    }
+
+    /**
+     * Create a new MappedPropertiesEvaluator.
+     */
+    public MappedPropertiesEvaluator() {
+        super(DEFAULT_PREFIX);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.apache.ant.props.PrefixedEvaluator#evaluate(java.lang.String,
+     *      java.lang.String, org.apache.tools.ant.PropertyHelper)
+     */
+    protected Object evaluate(String property, String prefix, PropertyHelper propertyHelper) {
+        int separator = property.indexOf(KEY_SEPARATOR);
+        if (separator < 0) {
+            return null;
+        }
+        Project project = propertyHelper.getProject();
+        String name = property.substring(0, separator);
+        try {
+            Store store = getStore(name, project);
+            if (store == null) {
+                return null;
+            }
+            long offset = store.find(property.substring(separator + 1));
+            return offset < 0 ? null : store.read(offset);
+        } catch (IOException e) {
+            project.log("Encountered exception reading properties store " + name
+                    + "; aborting", e, Project.MSG_ERR);
+            return null;
+        }
+    }
+
+    /**
+     * Get the mapped store of a file, mapping it and building its index as needed.
+     * @param name of the file, relative to the project's base directory
+     * @return Store or <code>null</code> if the file does not exist
+     */
+    private Store getStore(String name, Project project) throws IOException {
+        Store result = (Store) stores.get(name);
+        if (result != null && result.isCurrent()) {
+            return result;
+        }
+        // (re)mapping is rare; one thread at a time:
+        synchronized (stores) {
+            result = (Store) stores.get(name);
+            if (result != null && result.isCurrent()) {
+                return result;
+            }
+            File file = project.resolveFile(name);
+            if (!file.isFile()) {
+                project.log("Properties store " + file + " not found", Project.MSG_WARN);
+                stores.remove(name);
+                return null;
+            }
+            long length = file.length();
+            long lastModified = file.lastModified();
+            ByteBuffer data = map(file);
+            File indexFile = new File(file.getPath() + INDEX_SUFFIX);
+            ByteBuffer index = indexFile.isFile() ? map(indexFile) : null;
+            if (index == null || !isIndexOf(index, length, lastModified)) {
+                project.log("Indexing properties store " + file, Project.MSG_VERBOSE);
+                index = buildIndex(data, length, lastModified, indexFile, project);
+            }
+            result = new Store(file, length, lastModified, data, index);
+            stores.put(name, result);
+            return result;
+        }
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to map");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static boolean isIndexOf(ByteBuffer index, long length, long lastModified) {
+        if (index.capacity() < HEADER_SIZE || index.getInt(0) != MAGIC
+            || index.getInt(4) != VERSION || index.getLong(8) != length
+            || index.getLong(16) != lastModified) {
+            return false;
+        }
+        // a truncated index must not be searched beyond its end:
+        int count = index.getInt(HEADER_SIZE - 4);
+        return count >= 0 && index.capacity() >= HEADER_SIZE + (long) count * ENTRY_SIZE;
+    }
+
+    /**
+     * Build the index of a store, saving it if possible.  Of repeated keys the
+     * last counts, as with <code>java.util.Properties</code>.
+     * @return the index
+     */
+    private static ByteBuffer buildIndex(ByteBuffer data, long length, long lastModified,
+            File indexFile, Project project) throws IOException {
+        Map offsets = new HashMap();
+        PropertiesFileReader reader = new PropertiesFileReader(new Latin1Reader(data.duplicate()));
+        while (reader.next()) {
+            offsets.put(reader.getKey(), Long.valueOf(reader.getStart()));
+        }
+        String[] keys = (String[]) offsets.keySet().toArray(new String[offsets.size()]);
+        // String order is char order, as compared when searching:
+        Arrays.sort(keys);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(length);
+        out.writeLong(lastModified);
+        out.writeInt(keys.length);
+        int keyOffset = 0;
+        for (int i = 0; i < keys.length; i++) {
+            out.writeInt(keyOffset);
+            out.writeInt(keys[i].length());
+            out.writeLong(((Long) offsets.get(keys[i])).longValue());
+            keyOffset += keys[i].length();
+        }
+        for (int i = 0; i < keys.length; i++) {
+            out.writeChars(keys[i]);
+        }
+        out.close();
+        byte[] result = bytes.toByteArray();
+        save(result, indexFile, project);
+        return ByteBuffer.wrap(result);
+    }
+
+    /**
+     * Save an index, replacing the old one in a single step where the file system allows.
+     */
+    private static void save(byte[] index, File indexFile, Project project) {
+        File tmp = null;
+        try {
+            // uniquely named, as concurrent builds may index the same store:
+            tmp = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getParentFile());
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(index);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(indexFile) && !(indexFile.delete() && tmp.renameTo(indexFile))) {
+                throw new IOException("cannot rename " + tmp + " to " + indexFile);
+            }
+        } catch (IOException e) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            project.log("Could not save index " + indexFile + ": " + e.getMessage(),
+                    Project.MSG_WARN);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props;
+
+/**
+ * Cheap necessary conditions a property name must meet for an evaluator to
+ * handle it: characters it must contain, a prefix, a first or last character.
+ * A name failing them is rejected without consulting the evaluator.
+ *
+ * <p>The characters a name contains are summarized by its {@link #signature(String)},
+ * computed in a single scan and usable with any number of filters.  Only
+ * punctuation, whitespace and control characters are told apart; required
+ * letters and digits are not checked.</p>
+ */
+public final class NameFilter {
+    /**
+     * Implemented by evaluators declaring the names they may handle.
+     */
+    public interface Provider {
+        /**
+         * Get the conditions names must meet to be handled.
+         * @return NameFilter, never <code>null</code>
+         */
+        NameFilter getNameFilter();
+    }
+
+    /** Accepts every name */
+    public static final NameFilter ANY = new NameFilter(0L, 0L, null, null, (char) 0, null);
+
+    /** Signature bits of ASCII characters; -1 for letters and digits */
+    private static final byte[] BITS = new byte[128];
+
+    /** Signature bit of ASCII whitespace */
+    private static final int WHITESPACE_BIT = 32;
+
+    /** Signature bit of other ASCII control characters */
+    private static final int CONTROL_BIT = 33;
+
+    /** Signature bit of non-ASCII characters */
+    private static final int NON_ASCII_BIT = 34;
+
+    static {
+        int bit = 0;
+        for (int c = 0; c < BITS.length; c++) {
+            if (Character.isLetterOrDigit((char) c)) {
+                BITS[c] = -1;
+            } else if (c == ' ' || c >= '\t' && c <= '\r') {
+                BITS[c] = WHITESPACE_BIT;
+            } else if (c < ' ' || c == 127) {
+                BITS[c] = CONTROL_BIT;
+            } else {
+                // the 32 printable ASCII punctuation characters:
+                BITS[c] = (byte) bit++;
+            }
+        }
+    }
+
+    private final long allOf;
+    private final long anyOf;
+    private final String prefix;
+    private final String firstOf;
+    private final char last;
+    private final NameFilter[] alternatives;
+
+    private NameFilter(long allOf, long anyOf, String prefix, String firstOf, char last,
+            NameFilter[] alternatives) {
+        this.allOf = allOf;
+        this.anyOf = anyOf;
+        this.prefix = prefix;
+        this.firstOf = firstOf;
+        this.last = last;
+        this.alternatives = alternatives;
+    }
+
+    /**
+     * Get a filter accepting names containing all of <code>chars</code>.
+     * @param chars String
+     * @return NameFilter
+     */
+    public static NameFilter containingAll(String chars) {
+        return ANY.withAll(chars);
+    }
+
+    /**
+     * Get a filter accepting names containing any of <code>chars</code>.
+     * @param chars String
+     * @return NameFilter
+     */
+    public static NameFilter containingAny(String chars) {
+        long bits = 0L;
+        for (int i = 0; i < chars.length(); i++) {
+            long b = bitOf(chars.charAt(i));
+            if (b == 0L) {
+                // can't tell whether the name contains this one:
+                return ANY;
+            }
+            bits |= b;
+        }
+        return new NameFilter(0L, bits, null, null, (char) 0, null);
+    }
+
+    /**
+     * Get a filter accepting names starting with <code>prefix</code>.
+     * @param prefix String
+     * @return NameFilter
+     */
+    public static NameFilter startingWith(String prefix) {
+        return ANY.withPrefix(prefix);
+    }
+
+    /**
+     * Get a filter accepting names starting with any of <code>chars</code>.
+     * @param chars String
+     * @return NameFilter
+     */
+    public static NameFilter startingWithAny(String chars) {
+        return new NameFilter(0L, 0L, null, chars, (char) 0, null);
+    }
+
+    /**
+     * Get a filter accepting the names any of <code>filters</code> accepts.
+     * @param filters NameFilter[]
+     * @return NameFilter
+     */
+    public static NameFilter union(NameFilter[] filters) {
+        for (int i = 0; i < filters.length; i++) {
+            if (filters[i] == ANY) {
+                return ANY;
+            }
+        }
+        return filters.length == 1 ? filters[0]
+            : new NameFilter(0L, 0L, null, null, (char) 0, filters.clone());
+    }
+
+    /**
+     * Get a filter additionally requiring all of <code>chars</code>.
+     * @param chars String
+     * @return NameFilter
+     */
+    public NameFilter withAll(String chars) {
+        long bits = allOf;
+        for (int i = 0; i < chars.length(); i++) {
+            bits |= bitOf(chars.charAt(i));
+        }
+        return new NameFilter(bits, anyOf, prefix, firstOf, last, alternatives);
+    }
+
+    /**
+     * Get a filter additionally requiring <code>prefix</code>.
+     * @param prefix String
+     * @return NameFilter
+     */
+    public NameFilter withPrefix(String prefix) {
+        return new NameFilter(allOf, anyOf, prefix, firstOf, last, alternatives);
+    }
+
+    /**
+     * Get a filter additionally requiring the last character to be <code>c</code>,
+     * optionally followed by a line feed as a regular expression's <code>$</code>
+     * permits.
+     * @param c char
+     * @return NameFilter
+     */
+    public NameFilter withLast(char c) {
+        return new NameFilter(allOf, anyOf, prefix, firstOf, c, alternatives);
+    }
+
+    /**
+     * Compute the signature of a name for {@link #accepts(String, long)}.
+     * @param name String
+     * @return long
+     */
+    public static long signature(String name) {
+        long result = 0L;
+        int length = name.length();
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            if (c >= 128) {
+                result |= 1L << NON_ASCII_BIT;
+            } else if (BITS[c] >= 0) {
+                result |= 1L << BITS[c];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Learn whether <code>name</code> meets these conditions.
+     * @param name String
+     * @return boolean
+     */
+    public boolean accepts(String name) {
+        return this == ANY || accepts(name, allOf == 0L && anyOf == 0L && alternatives == null
+                ? 0L : signature(name));
+    }
+
+    /**
+     * Learn whether <code>name</code> meets these conditions.
+     * @param name String
+     * @param signature of <code>name</code>
+     * @return boolean
+     */
+    public boolean accepts(String name, long signature) {
+        if (alternatives != null) {
+            for (int i = 0; i < alternatives.length; i++) {
+                if (alternatives[i].accepts(name, signature)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if ((signature & allOf) != allOf || anyOf != 0L && (signature & anyOf) == 0L) {
+            return false;
+        }
+        if (prefix != null && !name.startsWith(prefix)) {
+            return false;
+        }
+        if (firstOf != null && (name.length() == 0 || firstOf.indexOf(name.charAt(0)) < 0)) {
+            return false;
+        }
+        if (last != 0) {
+            int end = name.length();
+            if (end > 0 && name.charAt(end - 1) == '\n' && last != '\n') {
+                end--;
+            }
+            return end > 0 && name.charAt(end - 1) == last;
+        }
+        return true;
+    }
+
+    /**
+     * Get the signature bit of a character.
+     * @return long, <code>0</code> for letters and digits
+     */
+    private static long bitOf(char c) {
+        if (c >= 128) {
+            return 1L << NON_ASCII_BIT;
+        }
+        return BITS[c] < 0 ? 0L : 1L << BITS[c];
+    }
+}
@@ -17,18 +17,134 @@
  */
 package org.apache.ant.props;
 
+import java.lang.reflect.Method;
 import java.text.ParsePosition;
+import java.util.ArrayList;
+import java.util.Iterator;
 
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.BuildLogger;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.property.ParseNextProperty;
 import org.apache.tools.ant.property.PropertyExpander;
 
 /**
  * By popular demand:  Nested property expander.
+ *
+ * <p>Only <code>$</code> is expected to start a nested property; a property
+ * name without one is returned as-is.
+ *
+ * <p>With <code>shortCircuit</code> set, a name that is a logical expression
+ * over nested properties, e.g. <code>${${os(family=unix)} &amp; ${available(file=x)}}</code>,
+ * is expanded left to right, skipping nested properties that can no longer
+ * change its outcome.  Each nested property then counts as a single operand,
+ * as if parenthesized.
  */
 public class NestedPropertyExpander implements PropertyExpander {
     private static final NestedPropertyExpander INSTANCE = new NestedPropertyExpander();
 
+    /** Larger buffers are not kept for reuse */
+    private static final int MAX_RETAINED_BUFFER = 8192;
+
+    private static final ThreadLocal BUFFERS = new ThreadLocal() {
+        protected Object initialValue() {
+            return new Buffer();
+        }
+    };
+
+    private EvaluatorStatistics statistics;
+
+    private boolean shortCircuit;
+
+    private volatile DebugLevel debugLevel;
+
+    /**
+     * Whether any listener of a project wanted debug messages when first asked.
+     */
+    private static final class DebugLevel {
+        private final Project project;
+        private final boolean logged;
+
+        DebugLevel(Project project, boolean logged) {
+            this.project = project;
+            this.logged = logged;
+        }
+    }
+
+    /**
+     * Unsynchronized character buffer, reused per thread and nesting level.
+     */
+    private static final class Buffer {
+        private char[] chars = new char[64];
+        private int length;
+        private boolean inUse;
+        private Buffer next;
+
+        static Buffer acquire() {
+            Buffer result = (Buffer) BUFFERS.get();
+            while (result.inUse) {
+                if (result.next == null) {
+                    result.next = new Buffer();
+                }
+                result = result.next;
+            }
+            result.inUse = true;
+            result.length = 0;
+            return result;
+        }
+
+        void release() {
+            inUse = false;
+            if (chars.length > MAX_RETAINED_BUFFER) {
+                chars = new char[64];
+            }
+        }
+
+        void append(String s, int from, int to) {
+            ensureCapacity(length + to - from);
+            s.getChars(from, to, chars, length);
+            length += to - from;
+        }
+
+        void append(String s) {
+            append(s, 0, s.length());
+        }
+
+        void append(char c) {
+            ensureCapacity(length + 1);
+            chars[length++] = c;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > chars.length) {
+                char[] newChars = new char[Math.max(capacity, chars.length * 2)];
+                System.arraycopy(chars, 0, newChars, 0, length);
+                chars = newChars;
+            }
+        }
+
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+
+    /**
+     * Set whether to skip nested properties that cannot change the outcome of a
+     * logical expression; default <code>false</code>.
+     * @param shortCircuit boolean
+     */
+    public void setShortCircuit(boolean shortCircuit) {
+        this.shortCircuit = shortCircuit;
+    }
+
+    /**
+     * Learn whether nested properties of logical expressions are expanded lazily.
+     * @return boolean
+     */
+    public boolean isShortCircuit() {
+        return shortCircuit;
+    }
+
     /**
      * Parse the next property name.
      * @param value the String to parse.
@@ -38,34 +154,227 @@ public class NestedPropertyExpander implements PropertyExpander {
      */
     public String parsePropertyName(String value, ParsePosition pos,
             ParseNextProperty parseNextProperty) {
+        if (!EvaluatorStatistics.isEnabled()) {
+            return parse(value, pos, parseNextProperty);
+        }
+        EvaluatorStatistics stats = getStatistics();
+        long start = System.nanoTime();
+        try {
+            return (String) stats.record(start, parse(value, pos, parseNextProperty));
+        } catch (RuntimeException e) {
+            stats.recordException(start);
+            throw e;
+        }
+    }
+
+    private EvaluatorStatistics getStatistics() {
+        EvaluatorStatistics result = statistics;
+        if (result == null) {
+            result = EvaluatorStatistics.forClass(getClass());
+            statistics = result;
+        }
+        return result;
+    }
+
+    private String parse(String value, ParsePosition pos, ParseNextProperty parseNextProperty) {
         int start = pos.getIndex();
-        if (value.length() - start >= 3
-            && '$' == value.charAt(start) && '{' == value.charAt(start + 1)) {
-            parseNextProperty.getProject().log("Attempting nested property processing",
-                    Project.MSG_DEBUG);
-            pos.setIndex(start + 2);
-            StringBuffer sb = new StringBuffer();
-            for (int c = pos.getIndex(); c < value.length(); c = pos.getIndex()) {
-                if (value.charAt(c) == '}') {
+        int len = value.length();
+        if (len - start < 3 || '$' != value.charAt(start) || '{' != value.charAt(start + 1)) {
+            return null;
+        }
+        int close = value.indexOf('}', start + 2);
+        int dollar = value.indexOf('$', start + 2);
+        if (dollar < 0 || close >= 0 && close < dollar) {
+            // nothing nested
+            if (close < 0) {
+                return null;
+            }
+            pos.setIndex(close + 1);
+            return value.substring(start + 2, close);
+        }
+        Project project = parseNextProperty.getProject();
+        if (project != null && isDebugLogged(project)) {
+            project.log("Attempting nested property processing", Project.MSG_DEBUG);
+        }
+        if (shortCircuit) {
+            String result = parseLogical(value, pos, parseNextProperty);
+            if (result != null) {
+                return result;
+            }
+        }
+        Buffer buffer = Buffer.acquire();
+        try {
+            for (int c = start + 2; c < len;) {
+                char ch = value.charAt(c);
+                if (ch == '}') {
                     pos.setIndex(c + 1);
-                    return sb.toString();
+                    return buffer.toString();
                 }
+                if (ch != '$') {
+                    int end = c + 1;
+                    while (end < len && value.charAt(end) != '$' && value.charAt(end) != '}') {
+                        end++;
+                    }
+                    buffer.append(value, c, end);
+                    c = end;
+                    continue;
+                }
+                pos.setIndex(c);
                 Object o = parseNextProperty.parseNextProperty(value, pos);
+                // be aware that the parse position may have changed either way:
+                c = pos.getIndex();
                 if (o != null) {
-                    sb.append(o);
+                    buffer.append(String.valueOf(o));
                 } else {
-                    // be aware that the parse position may now have changed;
-                    // update:
-                    c = pos.getIndex();
-                    sb.append(value.charAt(c));
-                    pos.setIndex(c + 1);
+                    buffer.append(value.charAt(c++));
                 }
             }
+        } finally {
+            buffer.release();
         }
         pos.setIndex(start);
         return null;
     }
 
+    /**
+     * Expand a property name that is a logical expression over nested properties,
+     * evaluating only those that can affect its outcome and substituting
+     * <code>false</code> for the rest.
+     * @return the expanded name, or <code>null</code> to expand it as usual
+     */
+    private static String parseLogical(final String value, final ParsePosition pos,
+            final ParseNextProperty parseNextProperty) {
+        int start = pos.getIndex();
+        int len = value.length();
+        StringBuffer template = new StringBuffer();
+        final ArrayList bounds = new ArrayList();
+        int c = start + 2;
+        for (; c < len && value.charAt(c) != '}'; c++) {
+            char ch = value.charAt(c);
+            if (ch == '$') {
+                int end = skipReference(value, c);
+                if (end < 0) {
+                    return null;
+                }
+                bounds.add(new int[] { c, end });
+                template.append(BooleanExpression.OPERAND);
+                c = end - 1;
+            } else if (ch == BooleanExpression.OPERAND) {
+                return null;
+            } else {
+                template.append(ch);
+            }
+        }
+        if (c == len) {
+            return null;
+        }
+        BooleanExpression.Deferred expression =
+            BooleanExpression.parseDeferred(template.toString());
+        if (expression == null) {
+            return null;
+        }
+        final String[] operands = new String[bounds.size()];
+        final boolean[] misparsed = new boolean[1];
+        expression.evaluate(new BooleanExpression.Operands() {
+            public Boolean evaluate(int index) {
+                int[] b = (int[]) bounds.get(index);
+                pos.setIndex(b[0]);
+                Object o = parseNextProperty.parseNextProperty(value, pos);
+                if (o == null) {
+                    // unresolved; leaves the expression unresolved:
+                    operands[index] = value.substring(b[0], b[1]);
+                    return null;
+                }
+                misparsed[0] |= pos.getIndex() != b[1];
+                operands[index] = String.valueOf(o);
+                return BooleanExpression.valueOf(operands[index]);
+            }
+        });
+        if (misparsed[0]) {
+            // another expander read the reference differently; start over:
+            pos.setIndex(start);
+            return null;
+        }
+        StringBuffer result = new StringBuffer();
+        for (int i = 0, operand = 0; i < template.length(); i++) {
+            char ch = template.charAt(i);
+            if (ch != BooleanExpression.OPERAND) {
+                result.append(ch);
+            } else if (operands[operand] == null) {
+                // skipped; cannot change the outcome
+                result.append(Boolean.FALSE);
+                operand++;
+            } else {
+                result.append('(').append(operands[operand++]).append(')');
+            }
+        }
+        pos.setIndex(c + 1);
+        return result.toString();
+    }
+
+    /**
+     * Get the end of the property reference starting at <code>start</code> by
+     * matching braces.
+     * @return end index, or <code>-1</code> if not a complete reference
+     */
+    private static int skipReference(String value, int start) {
+        int len = value.length();
+        if (start + 1 >= len || value.charAt(start + 1) != '{') {
+            return -1;
+        }
+        int depth = 1;
+        for (int c = start + 2; c < len; c++) {
+            char ch = value.charAt(c);
+            if (ch == '}') {
+                if (--depth == 0) {
+                    return c + 1;
+                }
+            } else if (ch == '$' && c + 1 < len && value.charAt(c + 1) == '{') {
+                depth++;
+                c++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Learn whether any listener of <code>project</code> might want a debug message.
+     * Decided once per project, as getBuildListeners() copies the listeners holding
+     * a lock; listeners added afterwards are not considered.
+     */
+    private boolean isDebugLogged(Project project) {
+        DebugLevel d = debugLevel;
+        if (d == null || d.project != project) {
+            d = new DebugLevel(project, computeDebugLogged(project));
+            debugLevel = d;
+        }
+        return d.logged;
+    }
+
+    /**
+     * Listeners other than BuildLoggers exposing their message output level are
+     * assumed to want everything.
+     */
+    private static boolean computeDebugLogged(Project project) {
+        for (Iterator iter = project.getBuildListeners().iterator(); iter.hasNext();) {
+            BuildListener listener = (BuildListener) iter.next();
+            if (!(listener instanceof BuildLogger)) {
+                return true;
+            }
+            try {
+                Method getter = listener.getClass().getMethod("getMessageOutputLevel",
+                        new Class[0]);
+                Integer level = (Integer) getter.invoke(listener, new Object[0]);
+                if (level.intValue() >= Project.MSG_DEBUG) {
+                    return true;
+                }
+            } catch (Exception e) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,497 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.PropertyHelper.PropertyEvaluator;
+import org.apache.tools.ant.types.Resource;
+import org.apache.tools.ant.types.ResourceCollection;
+
+/**
+ * PropertyEvaluator keeping the results of its delegates in a file from one
+ * build to the next, e.g. <code>${build.dir}/props.cache</code>.
+ *
+ * <p>A result is reused while the properties read to compute it keep their
+ * values, as with {@link ExpressionCache}, and while the Java runtime, the
+ * archives of <code>java.class.path</code> and the declared input resources
+ * keep their sizes and modification times; any change to the latter discards
+ * the whole file.  Class directories count by name only.  Only results that
+ * depend on nothing else, such as <code>available(classname=...)</code>,
+ * should be computed through this evaluator.  String and Boolean results are
+ * kept, others are recomputed.</p>
+ *
+ * <p>The file is memory-mapped on first use and holds its entries sorted, so
+ * a lookup is a binary search that decodes only the entry found.  Results
+ * computed during the build are added when the build finishes.</p>
+ */
+public class PersistentCacheEvaluator extends DelegatingPropertyEvaluator {
+    private static final int MAGIC = 0x50435253;
+
+    private static final int VERSION = 1;
+
+    private static final int FINGERPRINT_SIZE = 32;
+
+    /** Magic, version, fingerprint, entry count */
+    private static final int HEADER_SIZE = 4 + 4 + FINGERPRINT_SIZE + 4;
+
+    /** Key offset and length in characters, entry offset */
+    private static final int INDEX_ENTRY_SIZE = 4 + 4 + 4;
+
+    private static final byte STRING = 'S';
+
+    private static final byte BOOLEAN = 'B';
+
+    /** System properties identifying the Java runtime */
+    private static final String[] RUNTIME_PROPERTIES = {
+        "java.version", "java.vendor", "java.home", "os.name", "os.arch", "os.version"
+    };
+
+    /**
+     * A result with the properties read to compute it and their values.
+     */
+    private static final class Entry {
+        private final Object value;
+        private final String[] inputs;
+        private final String[] inputValues;
+
+        Entry(Object value, String[] inputs, String[] inputValues) {
+            this.value = value;
+            this.inputs = inputs;
+            this.inputValues = inputValues;
+        }
+
+        /**
+         * Learn whether the inputs still have the same values.
+         */
+        boolean isValid(PropertyHelper propertyHelper) {
+            for (int i = 0; i < inputs.length; i++) {
+                Object current = propertyHelper.getProperty(inputs[i]);
+                if (current == null ? inputValues[i] != null : !current.equals(inputValues[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The mapped cache file.
+     */
+    private static final class Store {
+        private final ByteBuffer data;
+        private final int count;
+
+        Store(ByteBuffer data) {
+            this.data = data;
+            this.count = data == null ? 0 : data.getInt(HEADER_SIZE - 4);
+        }
+
+        /**
+         * Find and decode the entry of a key.
+         * @return Entry or <code>null</code>
+         */
+        Entry find(String key) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(HEADER_SIZE + mid * INDEX_ENTRY_SIZE, key);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return read(mid);
+                }
+            }
+            return null;
+        }
+
+        private int compare(int indexEntry, String key) {
+            int base = data.getInt(indexEntry);
+            int length = data.getInt(indexEntry + 4);
+            int n = Math.min(length, key.length());
+            for (int i = 0; i < n; i++) {
+                int cmp = data.getChar(base + i * 2) - key.charAt(i);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return length - key.length();
+        }
+
+        String getKey(int i) {
+            int indexEntry = HEADER_SIZE + i * INDEX_ENTRY_SIZE;
+            return readChars(data.getInt(indexEntry), data.getInt(indexEntry + 4));
+        }
+
+        Entry read(int i) {
+            int pos = data.getInt(HEADER_SIZE + i * INDEX_ENTRY_SIZE + 8);
+            byte type = data.get(pos++);
+            String value = readString(pos);
+            pos += stringSize(value);
+            String[] inputs = new String[data.getInt(pos)];
+            String[] inputValues = new String[inputs.length];
+            pos += 4;
+            for (int j = 0; j < inputs.length; j++) {
+                inputs[j] = readString(pos);
+                pos += stringSize(inputs[j]);
+                inputValues[j] = readString(pos);
+                pos += stringSize(inputValues[j]);
+            }
+            return new Entry(type == BOOLEAN ? Boolean.valueOf(value) : (Object) value, inputs,
+                    inputValues);
+        }
+
+        private String readString(int pos) {
+            int length = data.getInt(pos);
+            return length < 0 ? null : readChars(pos + 4, length);
+        }
+
+        private String readChars(int pos, int length) {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = data.getChar(pos + i * 2);
+            }
+            return new String(chars);
+        }
+    }
+
+    private static final Store EMPTY = new Store(null);
+
+    private File file;
+
+    private final List resources = new ArrayList();
+
+    private volatile Store store;
+
+    private byte[] fingerprint;
+
+    /** Results computed during this build, by property name */
+    private final Map added = new ConcurrentHashMap();
+
+    /** Project whose end is awaited to save the results */
+    private volatile Project saving;
+
+    /** Recorder of the PropertyHelper last used */
+    private volatile PropertyReadRecorder recorder;
+
+    /**
+     * Set the file to keep results in.
+     * @param file File
+     */
+    public void setFile(File file) {
+        synchronized (added) {
+            this.file = file;
+            store = null;
+        }
+    }
+
+    /**
+     * Add a delegate whose results to keep.
+     * @param propertyEvaluator PropertyEvaluator
+     */
+    public void add(PropertyEvaluator propertyEvaluator) {
+        addDelegate(propertyEvaluator);
+    }
+
+    /**
+     * Add resources the results depend on; the kept results are discarded
+     * when any of them changes.
+     * @param resources ResourceCollection
+     */
+    public void add(ResourceCollection resources) {
+        synchronized (added) {
+            this.resources.add(resources);
+            store = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Looks up a result kept from a former build before asking the delegates.
+     */
+    protected Object evaluateDelegates(String propertyName, PropertyHelper propertyHelper) {
+        Store s = getStore(propertyHelper.getProject());
+        Entry entry = (Entry) added.get(propertyName);
+        if (entry == null) {
+            entry = s.find(propertyName);
+        }
+        if (entry != null && entry.isValid(propertyHelper)) {
+            return entry.value;
+        }
+        PropertyReadRecorder recorder = this.recorder;
+        if (recorder == null || recorder.getPropertyHelper() != propertyHelper) {
+            recorder = PropertyReadRecorder.getInstance(propertyHelper);
+            this.recorder = recorder;
+        }
+        PropertyReadRecorder.Recording recording = recorder.start();
+        Object result;
+        try {
+            result = super.evaluateDelegates(propertyName, propertyHelper);
+        } finally {
+            recorder.stop(recording);
+        }
+        if (result instanceof String || result instanceof Boolean) {
+            remember(propertyName, result, recording.getNames(), propertyHelper);
+        }
+        return result;
+    }
+
+    private void remember(String propertyName, Object result, String[] inputs,
+            PropertyHelper propertyHelper) {
+        String[] inputValues = new String[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            Object value = propertyHelper.getProperty(inputs[i]);
+            if (value != null && !(value instanceof String)) {
+                // could not be compared in a later build
+                return;
+            }
+            inputValues[i] = (String) value;
+        }
+        added.put(propertyName, new Entry(result, inputs, inputValues));
+    }
+
+    /**
+     * Get the mapped cache file, mapping it on first use and seeing that new
+     * results are saved when the build finishes.
+     */
+    private Store getStore(Project project) {
+        Store result = store;
+        if (result != null && saving == project) {
+            return result;
+        }
+        synchronized (added) {
+            if (file == null) {
+                throw new BuildException("file is required");
+            }
+            if (store == null || saving != project) {
+                fingerprint = computeFingerprint(project);
+                store = map(project);
+            }
+            if (saving != project) {
+                saving = project;
+                project.addBuildListener(new ProjectFinishedListener(project) {
+                    protected void finished(Project project) {
+                        save(project);
+                    }
+                });
+            }
+            return store;
+        }
+    }
+
+    private Store map(Project project) {
+        if (!file.isFile()) {
+            return EMPTY;
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            ByteBuffer data;
+            try {
+                FileChannel channel = raf.getChannel();
+                if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                    return EMPTY;
+                }
+                data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                raf.close();
+            }
+            byte[] stored = new byte[FINGERPRINT_SIZE];
+            for (int i = 0; i < stored.length; i++) {
+                stored[i] = data.get(8 + i);
+            }
+            if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION
+                    || !Arrays.equals(stored, fingerprint)) {
+                project.log("Discarding results kept in " + file
+                        + ", as their inputs have changed", Project.MSG_VERBOSE);
+                return EMPTY;
+            }
+            return new Store(data);
+        } catch (IOException e) {
+            project.log("Could not read " + file + ": " + e.getMessage(), Project.MSG_WARN);
+            return EMPTY;
+        }
+    }
+
+    /**
+     * Digest the Java runtime, the class path and the declared resources.
+     */
+    private byte[] computeFingerprint(Project project) {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < RUNTIME_PROPERTIES.length; i++) {
+            sb.append(System.getProperty(RUNTIME_PROPERTIES[i])).append('\n');
+        }
+        StringTokenizer st = new StringTokenizer(System.getProperty("java.class.path", ""),
+                File.pathSeparator);
+        while (st.hasMoreTokens()) {
+            File entry = new File(st.nextToken());
+            sb.append(entry.getAbsolutePath());
+            // the timestamp of a directory tells nothing about the classes in it:
+            if (!entry.isDirectory()) {
+                sb.append('\0').append(entry.length()).append('\0').append(entry.lastModified());
+            }
+            sb.append('\n');
+        }
+        for (Iterator iter = resources.iterator(); iter.hasNext();) {
+            ResourceCollection rc = (ResourceCollection) iter.next();
+            ArrayList lines = new ArrayList();
+            for (Iterator r = rc.iterator(); r.hasNext();) {
+                Resource resource = (Resource) r.next();
+                lines.add(resource.getName() + '\0' + resource.getSize() + '\0'
+                        + resource.getLastModified() + '\n');
+            }
+            String[] sorted = (String[]) lines.toArray(new String[lines.size()]);
+            Arrays.sort(sorted);
+            for (int i = 0; i < sorted.length; i++) {
+                sb.append(sorted[i]);
+            }
+            sb.append('\n');
+        }
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new BuildException(e);
+        } catch (IOException e) {
+            throw new BuildException(e);
+        }
+    }
+
+    /**
+     * Write the kept results together with those computed during the build.
+     */
+    private void save(Project project) {
+        synchronized (added) {
+            if (added.isEmpty()) {
+                return;
+            }
+            TreeMap entries = new TreeMap();
+            Store s = store;
+            for (int i = 0; i < s.count; i++) {
+                entries.put(s.getKey(i), s.read(i));
+            }
+            // results added meanwhile are kept for the next save:
+            for (Iterator iter = added.entrySet().iterator(); iter.hasNext();) {
+                Map.Entry e = (Map.Entry) iter.next();
+                entries.put(e.getKey(), e.getValue());
+                added.remove(e.getKey(), e.getValue());
+            }
+            File tmp = null;
+            try {
+                byte[] content = encode(entries);
+                // uniquely named, as concurrent builds may share the file:
+                tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+                FileOutputStream out = new FileOutputStream(tmp);
+                try {
+                    out.write(content);
+                } finally {
+                    out.close();
+                }
+                // a mapping of the former file remains valid:
+                if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+                    throw new IOException("cannot rename " + tmp + " to " + file);
+                }
+                store = new Store(ByteBuffer.wrap(content));
+                project.log("Kept " + entries.size() + " results in " + file,
+                        Project.MSG_VERBOSE);
+            } catch (IOException e) {
+                if (tmp != null) {
+                    tmp.delete();
+                }
+                project.log("Could not save results to " + file + ": " + e.getMessage(),
+                        Project.MSG_WARN);
+            }
+        }
+    }
+
+    private byte[] encode(TreeMap entries) throws IOException {
+        String[] keys = (String[]) entries.keySet().toArray(new String[entries.size()]);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        int[] offsets = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            out.writeChars(keys[i]);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            offsets[i] = out.size();
+            Entry entry = (Entry) entries.get(keys[i]);
+            out.writeByte(entry.value instanceof Boolean ? BOOLEAN : STRING);
+            writeString(out, entry.value.toString());
+            out.writeInt(entry.inputs.length);
+            for (int j = 0; j < entry.inputs.length; j++) {
+                writeString(out, entry.inputs[j]);
+                writeString(out, entry.inputValues[j]);
+            }
+        }
+        out.close();
+
+        int base = HEADER_SIZE + keys.length * INDEX_ENTRY_SIZE;
+        ByteArrayOutputStream result = new ByteArrayOutputStream(base + body.size());
+        out = new DataOutputStream(result);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.write(fingerprint);
+        out.writeInt(keys.length);
+        int keyOffset = base;
+        for (int i = 0; i < keys.length; i++) {
+            out.writeInt(keyOffset);
+            out.writeInt(keys[i].length());
+            out.writeInt(base + offsets[i]);
+            keyOffset += keys[i].length() * 2;
+        }
+        body.writeTo(out);
+        out.close();
+        return result.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(s.length());
+            out.writeChars(s);
+        }
+    }
+
+    private static int stringSize(String s) {
+        return 4 + (s == null ? 0 : s.length() * 2);
+    }
+}
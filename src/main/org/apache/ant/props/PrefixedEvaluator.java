@@ -31,6 +31,11 @@ public abstract class PrefixedEvaluator extends RegexBasedEvaluator {
      */
     public static final String DEFAULT_DELIMITER = ":";
 
+    /** Characters with a special meaning in a pattern */
+    private static final String PATTERN_CHARACTERS = "\\^$.|?*+()[]{}";
+
+    private String delimiter;
+
     /**
      * Create a new PrefixedEvaluator.
      */
@@ -55,6 +60,52 @@ public abstract class PrefixedEvaluator extends RegexBasedEvaluator {
      */
     protected abstract boolean canInterpret(String prefix);
 
+    /**
+     * {@inheritDoc}
+     * Requires the delimiter, unless it is a pattern.
+     */
+    protected NameFilter createNameFilter() {
+        String literal = getLiteralDelimiter();
+        return literal == null ? NameFilter.ANY : NameFilter.containingAll(literal);
+    }
+
+    /**
+     * Get the delimiter if it matches nothing but itself.
+     * @return String or <code>null</code>
+     */
+    protected String getLiteralDelimiter() {
+        for (int i = 0; i < delimiter.length(); i++) {
+            if (PATTERN_CHARACTERS.indexOf(delimiter.charAt(i)) >= 0) {
+                return null;
+            }
+        }
+        return delimiter;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Splits at a literal delimiter without the pattern.
+     */
+    protected String[] match(String propertyName) {
+        String literal = getLiteralDelimiter();
+        if (literal == null || literal.indexOf('\n') >= 0) {
+            return super.match(propertyName);
+        }
+        // as the pattern: '.' stops at line feeds, '$' matches before a final one
+        int end = propertyName.indexOf('\n');
+        if (end < 0) {
+            end = propertyName.length();
+        } else if (end < propertyName.length() - 1) {
+            return null;
+        }
+        int index = propertyName.indexOf(literal);
+        if (index < 0 || index + literal.length() > end) {
+            return null;
+        }
+        return new String[] { propertyName.substring(0, end), propertyName.substring(0, index),
+            propertyName.substring(index + literal.length(), end) };
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -84,6 +135,7 @@ public abstract class PrefixedEvaluator extends RegexBasedEvaluator {
         if (delimiter == null) {
             throw new IllegalArgumentException("invalid delimiter: null");
         }
+        this.delimiter = delimiter;
         super.setPattern("^(.*?)" + delimiter + "(.*)$");
     }
 
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.SubBuildListener;
+
+/**
+ * Build listener acting when the build of a project finishes, be it the main
+ * build or one started by <code>&lt;ant&gt;</code> and the like.
+ */
+abstract class ProjectFinishedListener implements SubBuildListener {
+    private final Project project;
+
+    /**
+     * Create a new ProjectFinishedListener.
+     * @param project whose build to wait for
+     */
+    ProjectFinishedListener(Project project) {
+        this.project = project;
+    }
+
+    /**
+     * Called when the build of the project finishes.
+     * @param project Project
+     */
+    protected abstract void finished(Project project);
+
+    /**
+     * {@inheritDoc}
+     */
+    public void buildFinished(BuildEvent event) {
+        finished(project);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void subBuildFinished(BuildEvent event) {
+        if (event.getProject() == project) {
+            finished(project);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void buildStarted(BuildEvent event) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void subBuildStarted(BuildEvent event) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void targetStarted(BuildEvent event) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void targetFinished(BuildEvent event) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void taskStarted(BuildEvent event) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void taskFinished(BuildEvent event) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void messageLogged(BuildEvent event) {
+    }
+}
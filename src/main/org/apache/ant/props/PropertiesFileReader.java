@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the entries of a properties file one at a time, following the format
+ * of <code>java.util.Properties.load</code>: comment and blank lines, line
+ * continuations, key/value separators and escapes.
+ */
+final class PropertiesFileReader {
+    private final Reader reader;
+    private final char[] buffer;
+    private int pos;
+    private int limit;
+    /** Number of characters read before <code>buffer</code> */
+    private long offset;
+    private long start;
+    private final StringBuffer line = new StringBuffer();
+    private String key;
+    private String value;
+
+    /**
+     * Create a new PropertiesFileReader.
+     * @param reader to read from, not closed by this object
+     */
+    PropertiesFileReader(Reader reader) {
+        this(reader, 8192);
+    }
+
+    /**
+     * Create a new PropertiesFileReader.
+     * @param reader to read from, not closed by this object
+     * @param bufferSize number of characters to read at a time
+     */
+    PropertiesFileReader(Reader reader, int bufferSize) {
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+    }
+
+    /**
+     * Advance to the next entry.
+     * @return <code>false</code> at the end of the input
+     * @throws IOException on error
+     */
+    boolean next() throws IOException {
+        if (!readLogicalLine()) {
+            return false;
+        }
+        int len = line.length();
+        int keyLen = 0;
+        int valueStart = len;
+        boolean hasSeparator = false;
+        boolean precedingBackslash = false;
+        while (keyLen < len) {
+            char c = line.charAt(keyLen);
+            if ((c == '=' || c == ':') && !precedingBackslash) {
+                valueStart = keyLen + 1;
+                hasSeparator = true;
+                break;
+            }
+            if (isWhitespace(c) && !precedingBackslash) {
+                valueStart = keyLen + 1;
+                break;
+            }
+            precedingBackslash = c == '\\' && !precedingBackslash;
+            keyLen++;
+        }
+        while (valueStart < len) {
+            char c = line.charAt(valueStart);
+            if (!isWhitespace(c)) {
+                if (hasSeparator || c != '=' && c != ':') {
+                    break;
+                }
+                hasSeparator = true;
+            }
+            valueStart++;
+        }
+        key = unescape(0, keyLen);
+        value = unescape(valueStart, len);
+        return true;
+    }
+
+    /**
+     * Get the offset of the current entry in the characters read, for reading
+     * it alone again later.
+     * @return long
+     */
+    long getStart() {
+        return start;
+    }
+
+    /**
+     * Get the key of the current entry.
+     * @return String
+     */
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * Get the value of the current entry.
+     * @return String
+     */
+    String getValue() {
+        return value;
+    }
+
+    /**
+     * Read the next logical line that is neither blank nor a comment into <code>line</code>,
+     * joining continued lines.  A logical line still empty after a continuation is
+     * treated as a new one, as by the <code>java.util.Properties</code> of Java 9 and later.
+     */
+    private boolean readLogicalLine() throws IOException {
+        line.setLength(0);
+        int c = read();
+        // backslashes only continue the natural line they end:
+        int naturalLineStart = 0;
+        while (true) {
+            if (line.length() == 0) {
+                while (c == '#' || c == '!' || c == '\n' || c == '\r' || c >= 0 && isWhitespace((char) c)) {
+                    if (c == '#' || c == '!') {
+                        do {
+                            c = read();
+                        } while (c >= 0 && c != '\n' && c != '\r');
+                    } else {
+                        c = read();
+                    }
+                }
+                if (c < 0) {
+                    return false;
+                }
+                if (naturalLineStart == 0) {
+                    start = offset + pos - 1;
+                }
+            }
+            if (c >= 0 && c != '\n' && c != '\r') {
+                line.append((char) c);
+                c = read();
+                continue;
+            }
+            int backslashes = 0;
+            for (int i = line.length() - 1; i >= naturalLineStart && line.charAt(i) == '\\'; i--) {
+                backslashes++;
+            }
+            if (backslashes % 2 == 0) {
+                return true;
+            }
+            line.setLength(line.length() - 1);
+            if (c < 0) {
+                return true;
+            }
+            boolean crlf = c == '\r' && peek() == '\n';
+            if (crlf) {
+                read();
+            }
+            c = read();
+            if (c < 0 && !crlf) {
+                // java.util.Properties keeps even an empty line continued right up to the end
+                return true;
+            }
+            while (c >= 0 && isWhitespace((char) c)) {
+                c = read();
+            }
+            naturalLineStart = line.length();
+        }
+    }
+
+    private String unescape(int from, int to) {
+        StringBuffer sb = null;
+        for (int i = from; i < to; i++) {
+            char c = line.charAt(i);
+            if (c != '\\') {
+                if (sb != null) {
+                    sb.append(c);
+                }
+                continue;
+            }
+            if (sb == null) {
+                sb = new StringBuffer(to - from);
+                sb.append(line.substring(from, i));
+            }
+            c = line.charAt(++i);
+            if (c == 'u') {
+                int unicode = 0;
+                for (int j = 0; j < 4; j++) {
+                    int digit = ++i < to ? hexDigit(line.charAt(i)) : -1;
+                    if (digit < 0) {
+                        throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                    }
+                    unicode = unicode << 4 | digit;
+                }
+                sb.append((char) unicode);
+            } else {
+                sb.append(c == 't' ? '\t' : c == 'r' ? '\r' : c == 'n' ? '\n' : c == 'f' ? '\f' : c);
+            }
+        }
+        return sb == null ? line.substring(from, to) : sb.toString();
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++];
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos];
+    }
+
+    private boolean fill() throws IOException {
+        int n = reader.read(buffer, 0, buffer.length);
+        offset += limit;
+        pos = 0;
+        limit = Math.max(0, n);
+        return n > 0;
+    }
+
+    private static int hexDigit(char c) {
+        return c >= '0' && c <= '9' ? c - '0'
+            : c >= 'a' && c <= 'f' ? c - 'a' + 10
+            : c >= 'A' && c <= 'F' ? c - 'A' + 10
+            : -1;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\f';
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.PropertyHelper.PropertySetter;
+import org.apache.tools.ant.property.LocalProperties;
+
+/**
+ * {@link PropertySetter} that never handles a property itself but counts
+ * the properties set through its {@link PropertyHelper}, so that cached
+ * results depending on properties can tell whether they may be stale.
+ * Properties set bypassing the delegates (e.g. user properties) go unnoticed.
+ *
+ * <p>Setters are consulted before Ant stores the value, so a set is counted
+ * before it can be seen; sets not seen yet are kept as pending until they
+ * are, see {@link #isSettled()}.  <code>&lt;local&gt;</code> properties
+ * change when they are declared and again when their scope ends, without
+ * being set, so they cannot be tracked at all; see {@link #isLocal(String)}.</p>
+ */
+final class PropertyChangeTracker implements PropertySetter {
+    /**
+     * Value of a set not seen through the PropertyHelper yet.
+     */
+    private static final class Pending {
+        private final Object value;
+        private final boolean isNew;
+
+        Pending(Object value, boolean isNew) {
+            this.value = value;
+            this.isNew = isNew;
+        }
+    }
+
+    private final PropertyHelper propertyHelper;
+    private final LocalProperties localProperties;
+    private final AtomicInteger generation = new AtomicInteger();
+
+    /** Property name to the Pending value of its last set */
+    private final Map pending = new ConcurrentHashMap();
+
+    private PropertyChangeTracker(PropertyHelper propertyHelper,
+            LocalProperties localProperties) {
+        this.propertyHelper = propertyHelper;
+        this.localProperties = localProperties;
+    }
+
+    /**
+     * Create a tracker and register it with the given PropertyHelper.
+     * @param propertyHelper to track
+     * @return PropertyChangeTracker
+     */
+    static PropertyChangeTracker install(PropertyHelper propertyHelper) {
+        Project project = propertyHelper.getProject();
+        // make sure local properties are in place, behind the tracker, so that their sets count:
+        LocalProperties localProperties = project == null ? null : LocalProperties.get(project);
+        PropertyChangeTracker result = new PropertyChangeTracker(propertyHelper, localProperties);
+        propertyHelper.add(result);
+        return result;
+    }
+
+    /**
+     * Get the tracked PropertyHelper.
+     * @return PropertyHelper
+     */
+    PropertyHelper getPropertyHelper() {
+        return propertyHelper;
+    }
+
+    /**
+     * Get the current generation, which changes whenever a property is set.
+     * @return int
+     */
+    int getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Learn whether every set counted so far can be seen through the
+     * PropertyHelper.  Only then does the generation read before this call
+     * describe the properties an evaluation started afterwards will see.
+     * @return boolean
+     */
+    boolean isSettled() {
+        for (Iterator iter = pending.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry e = (Map.Entry) iter.next();
+            Pending p = (Pending) e.getValue();
+            if (!isStored((String) e.getKey(), p)) {
+                return false;
+            }
+            pending.remove(e.getKey(), p);
+        }
+        return true;
+    }
+
+    /**
+     * Learn whether a property is declared <code>&lt;local&gt;</code> in a
+     * scope active on the current thread, so that its value may change
+     * without the generation changing.
+     * @param property name
+     * @return boolean
+     */
+    boolean isLocal(String property) {
+        return localProperties != null
+                && localProperties.evaluate(property, propertyHelper) != null;
+    }
+
+    private boolean isStored(String property, Pending p) {
+        if (p.value == null) {
+            return true;
+        }
+        Object current = propertyHelper.getProperty(property);
+        if (p.isNew) {
+            // a new property is not set again if it exists:
+            return current != null;
+        }
+        // user properties are not overridden:
+        return p.value.equals(current) || propertyHelper.getUserProperty(property) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean setNew(String property, Object value, PropertyHelper propertyHelper) {
+        // pending first, so that whoever sees the new generation sees it, too:
+        pending.put(property, new Pending(value, true));
+        generation.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean set(String property, Object value, PropertyHelper propertyHelper) {
+        pending.put(property, new Pending(value, false));
+        generation.incrementAndGet();
+        return false;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.PropertyHelper.PropertyEvaluator;
+import org.apache.tools.ant.property.LocalProperties;
+
+/**
+ * {@link PropertyEvaluator} that never evaluates a property itself but, while
+ * a recording is in progress on the current thread, notes the names of the
+ * properties read through its {@link PropertyHelper}.  One instance serves
+ * each PropertyHelper.  It is registered after Ant's local properties
+ * evaluator, which would otherwise answer some reads before it sees them.
+ */
+final class PropertyReadRecorder implements PropertyEvaluator {
+    /**
+     * Names of the properties read during one evaluation.
+     */
+    static final class Recording {
+        private final Recording parent;
+        private final ArrayList names = new ArrayList();
+
+        private Recording(Recording parent) {
+            this.parent = parent;
+        }
+
+        void add(String name) {
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+        }
+
+        /**
+         * Get the names read, in order of first reading.
+         * @return String[]
+         */
+        String[] getNames() {
+            return (String[]) names.toArray(new String[names.size()]);
+        }
+    }
+
+    private static final Map INSTANCES = new WeakHashMap();
+
+    private final ThreadLocal current = new ThreadLocal();
+    private final WeakReference propertyHelper;
+
+    private PropertyReadRecorder(PropertyHelper propertyHelper) {
+        this.propertyHelper = new WeakReference(propertyHelper);
+    }
+
+    /**
+     * Get the recorder of a PropertyHelper, registering one if necessary.
+     * @param propertyHelper PropertyHelper
+     * @return PropertyReadRecorder
+     */
+    static PropertyReadRecorder getInstance(PropertyHelper propertyHelper) {
+        synchronized (INSTANCES) {
+            PropertyReadRecorder result = (PropertyReadRecorder) INSTANCES.get(propertyHelper);
+            if (result == null) {
+                if (propertyHelper.getProject() != null) {
+                    // make sure local properties are in place, behind the recorder:
+                    LocalProperties.get(propertyHelper.getProject());
+                }
+                result = new PropertyReadRecorder(propertyHelper);
+                propertyHelper.add(result);
+                INSTANCES.put(propertyHelper, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Get the PropertyHelper whose reads are recorded.
+     * @return PropertyHelper, <code>null</code> once garbage collected
+     */
+    PropertyHelper getPropertyHelper() {
+        return (PropertyHelper) propertyHelper.get();
+    }
+
+    /**
+     * Start recording on the current thread, ahead of any recording already in progress.
+     * @return Recording to pass to {@link #stop(Recording)}
+     */
+    Recording start() {
+        Recording result = new Recording((Recording) current.get());
+        current.set(result);
+        return result;
+    }
+
+    /**
+     * Stop a recording, adding what it recorded to the enclosing recording, if any.
+     * @param recording returned from {@link #start()}
+     */
+    void stop(Recording recording) {
+        current.set(recording.parent);
+        if (recording.parent != null) {
+            for (Iterator iter = recording.names.iterator(); iter.hasNext();) {
+                recording.parent.add((String) iter.next());
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object evaluate(String property, PropertyHelper propertyHelper) {
+        Recording recording = (Recording) current.get();
+        if (recording != null) {
+            recording.add(property);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.PropertyHelper;
+
+/**
+ * PropertyEvaluator that reads the content of a file, as
+ * <code>&lt;loadfile&gt;</code> would; syntax <code>readfile:<em>file</em></code>.
+ *
+ * <p>Files are read through a <code>FileChannel</code>, larger ones from a
+ * mapped buffer, and decoded straight from it.  Files larger than
+ * <code>maxBytes</code> are refused with a BuildException rather than read.
+ * Contents are cached per file and read again when its length or modification
+ * time changes.</p>
+ */
+public class ReadFileEvaluator extends StaticPrefixedEvaluator {
+    /** Default prefix */
+    public static final String DEFAULT_PREFIX = "readfile";
+
+    /** Default maximum number of bytes read from a file */
+    public static final long DEFAULT_MAX_BYTES = 1024 * 1024;
+
+    /** Default maximum number of cached files */
+    public static final int DEFAULT_CACHE_SIZE = 64;
+
+    /** Files from this size on are mapped rather than read */
+    private static final long MAP_THRESHOLD = 64 * 1024;
+
+    /**
+     * Content of a file as it was when read.
+     */
+    private static final class Entry {
+        private final long length;
+        private final long lastModified;
+        private final String content;
+
+        Entry(long length, long lastModified, String content) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.content = content;
+        }
+    }
+
+    private volatile Charset charset = Charset.defaultCharset();
+
+    private volatile long maxBytes = DEFAULT_MAX_BYTES;
+
+    private final BoundedCache cache = new BoundedCache(DEFAULT_CACHE_SIZE);
+
+    /**
+     * Create a new ReadFileEvaluator.
+     */
+    public ReadFileEvaluator() {
+        super(DEFAULT_PREFIX);
+    }
+
+    /**
+     * Set the encoding of the files; default the platform's.
+     * @param encoding String
+     */
+    public void setEncoding(String encoding) {
+        charset = Charset.forName(encoding);
+        cache.clear();
+    }
+
+    /**
+     * Set the maximum number of bytes to read from a file; default
+     * {@link #DEFAULT_MAX_BYTES}.
+     * @param maxBytes long
+     */
+    public void setMaxBytes(long maxBytes) {
+        if (maxBytes < 0 || maxBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("invalid maximum number of bytes: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        cache.clear();
+    }
+
+    /**
+     * Set the maximum number of files whose content to cache; default
+     * {@link #DEFAULT_CACHE_SIZE}, <code>0</code> disables caching.
+     * @param cacheSize int
+     */
+    public void setCacheSize(int cacheSize) {
+        cache.setMaxSize(cacheSize);
+        cache.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.apache.ant.props.PrefixedEvaluator#evaluate(java.lang.String,
+     *      java.lang.String, org.apache.tools.ant.PropertyHelper)
+     */
+    protected Object evaluate(String property, String prefix, PropertyHelper propertyHelper) {
+        Project project = propertyHelper.getProject();
+        File file = project.resolveFile(property);
+        long length = file.length();
+        long lastModified = file.lastModified();
+        Entry entry = (Entry) cache.get(file);
+        if (entry != null && entry.length == length && entry.lastModified == lastModified) {
+            return entry.content;
+        }
+        if (!file.isFile()) {
+            project.log("File " + file + " not found", Project.MSG_WARN);
+            return null;
+        }
+        if (length > maxBytes) {
+            throw new BuildException("File " + file + " is too large to read: " + length
+                    + " bytes, maxbytes is " + maxBytes);
+        }
+        String content;
+        try {
+            content = read(file);
+        } catch (IOException e) {
+            project.log("Encountered exception reading " + file + "; aborting", e,
+                    Project.MSG_ERR);
+            return null;
+        }
+        cache.put(file, new Entry(length, lastModified, content));
+        return content;
+    }
+
+    private String read(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > maxBytes) {
+                // grew since checked:
+                throw new IOException("more than " + maxBytes + " bytes");
+            }
+            ByteBuffer buffer;
+            if (size >= MAP_THRESHOLD) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        break;
+                    }
+                }
+                buffer.flip();
+            }
+            // replacing what cannot be decoded, as a Reader would:
+            return charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE).decode(buffer).toString();
+        } finally {
+            in.close();
+        }
+    }
+}
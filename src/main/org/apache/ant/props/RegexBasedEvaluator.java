@@ -19,8 +19,11 @@
  */
 package org.apache.ant.props;
 
-import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
+import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.MagicNames;
 import org.apache.tools.ant.PropertyHelper;
 import org.apache.tools.ant.types.RegularExpression;
@@ -29,13 +32,88 @@ import org.apache.tools.ant.util.regexp.Regexp;
 /**
  * <code>PropertyHelper.PropertyEvaluator</code> based on a regex pattern that will produce match
  * groups to be dealt with by {@link #evaluate(String[], PropertyHelper)}.
+ *
+ * <p>The pattern is compiled once per evaluator and matched with a per-thread
+ * <code>Matcher</code>; match and capture happen in a single pass.  Names not
+ * meeting the {@link NameFilter} of the evaluator, and names recently found not
+ * to match, are rejected without matching.</p>
  */
-public abstract class RegexBasedEvaluator implements PropertyHelper.PropertyEvaluator {
+public abstract class RegexBasedEvaluator implements PropertyHelper.PropertyEvaluator,
+        NameFilter.Provider {
+    /** Number of slots for names found not to match */
+    private static final int REJECTED_SLOTS = 64;
+
     private String pattern;
 
-    private RegularExpression regularExpression;
+    private volatile RegularExpression regularExpression;
     private int options = Regexp.MATCH_DEFAULT;
 
+    private volatile CompiledPattern compiledPattern;
+
+    private volatile NameFilter nameFilter;
+
+    /**
+     * Names found not to match, by hash code; racing threads may overwrite
+     * each other's entries, which only costs a match.
+     */
+    private volatile String[] rejected = new String[REJECTED_SLOTS];
+
+    private EvaluatorStatistics statistics;
+
+    /**
+     * Immutable compiled pattern with per-thread matcher state.
+     */
+    private static final class CompiledPattern {
+        private final Pattern pattern;
+        private final ThreadLocal matcher = new ThreadLocal();
+
+        CompiledPattern(String regex, int options) {
+            try {
+                pattern = Pattern.compile(regex, toFlags(options));
+            } catch (PatternSyntaxException e) {
+                throw new BuildException(e);
+            }
+        }
+
+        String[] match(String input) {
+            Matcher m = (Matcher) matcher.get();
+            if (m == null) {
+                m = pattern.matcher(input);
+                matcher.set(m);
+            } else {
+                m.reset(input);
+            }
+            String[] result = null;
+            if (m.find()) {
+                int count = m.groupCount();
+                result = new String[count + 1];
+                for (int i = 0; i <= count; i++) {
+                    String group = m.group(i);
+                    // treat non-matching groups as empty matches, as Ant's Regexp does:
+                    result[i] = group == null ? "" : group;
+                }
+            }
+            // don't hold on to the input:
+            m.reset("");
+            return result;
+        }
+
+        private static int toFlags(int options) {
+            // be strict about line separator, as Ant's Regexp is:
+            int flags = Pattern.UNIX_LINES;
+            if ((options & Regexp.MATCH_CASE_INSENSITIVE) != 0) {
+                flags |= Pattern.CASE_INSENSITIVE;
+            }
+            if ((options & Regexp.MATCH_MULTILINE) != 0) {
+                flags |= Pattern.MULTILINE;
+            }
+            if ((options & Regexp.MATCH_SINGLELINE) != 0) {
+                flags |= Pattern.DOTALL;
+            }
+            return flags;
+        }
+    }
+
     /**
      * Create a new RegexBasedEvaluator.
      */
@@ -57,37 +135,131 @@ public abstract class RegexBasedEvaluator implements PropertyHelper.PropertyEval
      */
     protected void addOption(int option) {
         options |= option;
+        compiledPattern = null;
+        rejected = new String[REJECTED_SLOTS];
     }
 
     /** {@inheritDoc} */
     public Object evaluate(String propertyName, PropertyHelper propertyHelper) {
+        if (!getNameFilter().accepts(propertyName)) {
+            return null;
+        }
+        if (!EvaluatorStatistics.isEnabled()) {
+            return evaluateName(propertyName, propertyHelper);
+        }
+        EvaluatorStatistics stats = getStatistics();
+        long start = System.nanoTime();
+        try {
+            return stats.record(start, evaluateName(propertyName, propertyHelper));
+        } catch (RuntimeException e) {
+            stats.recordException(start);
+            throw e;
+        }
+    }
+
+    private Object evaluateName(String propertyName, PropertyHelper propertyHelper) {
         //never try to resolve the regex factory magic property:
         if (MagicNames.REGEXP_IMPL.equals(propertyName)) {
             return null;
         }
-        Regexp regexp = getRegularExpression().getRegexp(propertyHelper.getProject());
-        if (regexp.matches(propertyName)) {
-            List groups = regexp.getGroups(propertyName, options);
-            String[] s = (String[]) groups.toArray(new String[groups.size()]);
-            return evaluate(s, propertyHelper);
+        String[] r = rejected;
+        int slot = propertyName.hashCode() & (REJECTED_SLOTS - 1);
+        if (propertyName.equals(r[slot])) {
+            return null;
         }
-        return null;
+        String[] groups = match(propertyName);
+        if (groups == null) {
+            r[slot] = propertyName;
+            return null;
+        }
+        return evaluate(groups, propertyHelper);
+    }
+
+    /**
+     * Get the conditions a property name must meet to match; {@link NameFilter#ANY}
+     * unless {@link #createNameFilter()} knows better.
+     * @return NameFilter
+     */
+    public NameFilter getNameFilter() {
+        NameFilter result = nameFilter;
+        if (result == null) {
+            result = createNameFilter();
+            nameFilter = result;
+        }
+        return result;
+    }
+
+    /**
+     * Create the conditions a property name must meet to match the pattern.
+     * This implementation returns {@link NameFilter#ANY}.
+     * @return NameFilter
+     */
+    protected NameFilter createNameFilter() {
+        return NameFilter.ANY;
+    }
+
+    /**
+     * Discard the {@link NameFilter}, e.g. as a setting it depends on changed.
+     */
+    protected void resetNameFilter() {
+        nameFilter = null;
+    }
+
+    private EvaluatorStatistics getStatistics() {
+        EvaluatorStatistics result = statistics;
+        if (result == null) {
+            result = EvaluatorStatistics.forClass(getClass());
+            statistics = result;
+        }
+        return result;
     }
 
     /**
-     * Get the regular expression object to use.
+     * Match the specified property name against this evaluator's pattern.
+     * The outcome must depend on the name alone, as names found not to match
+     * are remembered.
+     * 
+     * @param propertyName the String to match.
+     * @return the match groups, group 0 being the whole match, or <code>null</code>
+     *         if <code>propertyName</code> does not match.
+     */
+    protected String[] match(String propertyName) {
+        return getCompiledPattern().match(propertyName);
+    }
+
+    private CompiledPattern getCompiledPattern() {
+        CompiledPattern result = compiledPattern;
+        if (result == null) {
+            // racing threads compile equivalent patterns; last one wins:
+            result = new CompiledPattern(getRequiredPattern(), options);
+            compiledPattern = result;
+        }
+        return result;
+    }
+
+    private String getRequiredPattern() {
+        String result = getPattern();
+        if (result == null) {
+            throw new IllegalStateException("pattern not set");
+        }
+        return result;
+    }
+
+    /**
+     * Get the regular expression object to use.  No longer used for matching by
+     * this class; retained for subclasses wanting an Ant <code>RegularExpression</code>.
      * 
      * @return the regexp
      */
-    protected synchronized RegularExpression getRegularExpression() {
-        if (regularExpression == null) {
-            if (getPattern() == null) {
-                throw new IllegalStateException("pattern not set");
-            }
-            regularExpression = new RegularExpression();
-            regularExpression.setPattern(getPattern());
+    protected RegularExpression getRegularExpression() {
+        RegularExpression result = regularExpression;
+        if (result == null) {
+            // as getCompiledPattern(), without a lock:
+            result = new RegularExpression();
+            result.setPattern(getRequiredPattern());
+            regularExpression = result;
         }
-        return regularExpression;
+        return result;
     }
 
     /**
@@ -115,5 +287,8 @@ public abstract class RegexBasedEvaluator implements PropertyHelper.PropertyEval
     public void setPattern(String pattern) {
         this.pattern = pattern;
         regularExpression = null;
+        compiledPattern = null;
+        nameFilter = null;
+        rejected = new String[REJECTED_SLOTS];
     }
 }
@@ -57,6 +57,19 @@ public abstract class StaticPrefixedEvaluator extends PrefixedEvaluator {
         return getRequiredPrefix().equals(prefix);
     }
 
+    /**
+     * {@inheritDoc}
+     * Requires the prefix, followed by the delimiter unless it is a pattern.
+     */
+    protected NameFilter createNameFilter() {
+        String prefix = getPrefix();
+        if (prefix == null) {
+            return super.createNameFilter();
+        }
+        String literal = getLiteralDelimiter();
+        return NameFilter.startingWith(literal == null ? prefix : prefix + literal);
+    }
+
     /**
      * Get the non-null prefix.
      * @return String
@@ -83,6 +96,7 @@ public abstract class StaticPrefixedEvaluator extends PrefixedEvaluator {
      */
     public void setPrefix(String prefix) {
         this.prefix = prefix;
+        resetNameFilter();
     }
 
 }
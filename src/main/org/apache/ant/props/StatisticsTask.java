@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.EnumeratedAttribute;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Switches the recording of {@link EvaluatorStatistics} on or off, resets them,
+ * or reports them as text or JSON to the log or a file.
+ */
+public class StatisticsTask extends Task {
+    private static final String LINE_SEP = System.getProperty("line.separator");
+
+    /**
+     * What to do.
+     */
+    public static class Action extends EnumeratedAttribute {
+        /** Report the statistics */
+        public static final String REPORT = "report";
+        /** Start recording */
+        public static final String ENABLE = "enable";
+        /** Stop recording */
+        public static final String DISABLE = "disable";
+        /** Zero the counters */
+        public static final String RESET = "reset";
+
+        /**
+         * Create a new Action.
+         */
+        public Action() {
+        }
+
+        /**
+         * Create a new Action.
+         * @param value String
+         */
+        public Action(String value) {
+            setValue(value);
+        }
+
+        /** {@inheritDoc} */
+        public String[] getValues() {
+            return new String[] { REPORT, ENABLE, DISABLE, RESET };
+        }
+    }
+
+    /**
+     * Report format.
+     */
+    public static class Format extends EnumeratedAttribute {
+        /** Plain text table */
+        public static final String TEXT = "text";
+        /** JSON document */
+        public static final String JSON = "json";
+
+        /**
+         * Create a new Format.
+         */
+        public Format() {
+        }
+
+        /**
+         * Create a new Format.
+         * @param value String
+         */
+        public Format(String value) {
+            setValue(value);
+        }
+
+        /** {@inheritDoc} */
+        public String[] getValues() {
+            return new String[] { TEXT, JSON };
+        }
+    }
+
+    private Action action = new Action(Action.REPORT);
+    private Format format = new Format(Format.TEXT);
+    private File file;
+    private boolean append;
+
+    /**
+     * Set what to do; default <code>report</code>.
+     * @param action Action
+     */
+    public void setAction(Action action) {
+        this.action = action;
+    }
+
+    /**
+     * Set the report format; default <code>text</code>.
+     * @param format Format
+     */
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+
+    /**
+     * Set the file to write the report to; by default it is logged.
+     * @param file File
+     */
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Set whether to append to <code>file</code> rather than overwrite it.
+     * @param append boolean
+     */
+    public void setAppend(boolean append) {
+        this.append = append;
+    }
+
+    /** {@inheritDoc} */
+    public void execute() {
+        String value = action.getValue();
+        if (Action.ENABLE.equals(value)) {
+            EvaluatorStatistics.setEnabled(true);
+        } else if (Action.DISABLE.equals(value)) {
+            EvaluatorStatistics.setEnabled(false);
+        } else if (Action.RESET.equals(value)) {
+            EvaluatorStatistics.resetAll();
+        } else {
+            report();
+        }
+    }
+
+    private void report() {
+        List all = EvaluatorStatistics.getAll();
+        for (Iterator iter = all.iterator(); iter.hasNext();) {
+            if (((EvaluatorStatistics) iter.next()).getAttempts() == 0) {
+                iter.remove();
+            }
+        }
+        String report = Format.JSON.equals(format.getValue()) ? toJson(all) : toText(all);
+        if (file == null) {
+            log(report, Project.MSG_INFO);
+            return;
+        }
+        Writer w = null;
+        try {
+            w = new OutputStreamWriter(new FileOutputStream(file, append), "UTF-8");
+            w.write(report);
+            w.write(LINE_SEP);
+        } catch (IOException e) {
+            throw new BuildException("Unable to write " + file, e, getLocation());
+        } finally {
+            FileUtils.close(w);
+        }
+    }
+
+    /**
+     * Format statistics as a text table followed by the non-empty histogram
+     * buckets of each evaluator.
+     * @param all List of EvaluatorStatistics
+     * @return String
+     */
+    static String toText(List all) {
+        StringBuffer sb = new StringBuffer();
+        sb.append(String.format(Locale.ENGLISH, "%-60s %10s %10s %10s %10s %12s %10s %10s %10s",
+                new Object[] { "evaluator", "attempts", "matches", "nulls", "exceptions",
+                        "total ms", "mean us", "p99 us", "max us" }));
+        if (all.isEmpty()) {
+            sb.append(LINE_SEP).append("(nothing recorded)");
+        }
+        for (Iterator iter = all.iterator(); iter.hasNext();) {
+            EvaluatorStatistics stats = (EvaluatorStatistics) iter.next();
+            sb.append(LINE_SEP).append(String.format(Locale.ENGLISH,
+                    "%-60s %10d %10d %10d %10d %12.3f %10.3f %10.3f %10.3f",
+                    new Object[] { stats.getEvaluatorClass(), Long.valueOf(stats.getAttempts()),
+                            Long.valueOf(stats.getMatches()), Long.valueOf(stats.getNulls()),
+                            Long.valueOf(stats.getExceptions()),
+                            Double.valueOf(stats.getTotalNanos() / 1e6),
+                            Double.valueOf(stats.getTotalNanos() / 1e3 / stats.getAttempts()),
+                            Double.valueOf(stats.getPercentile(0.99) / 1e3),
+                            Double.valueOf(stats.getMaxNanos() / 1e3) }));
+        }
+        for (Iterator iter = all.iterator(); iter.hasNext();) {
+            EvaluatorStatistics stats = (EvaluatorStatistics) iter.next();
+            sb.append(LINE_SEP).append(stats.getEvaluatorClass()).append(" latency:");
+            for (int i = 0; i < EvaluatorStatistics.BUCKETS; i++) {
+                long count = stats.getHistogramCount(i);
+                if (count > 0) {
+                    sb.append(' ').append(i < EvaluatorStatistics.BUCKETS - 1 ? "<" : ">=");
+                    sb.append(formatNanos(EvaluatorStatistics.getBucketLimit(
+                            Math.min(i, EvaluatorStatistics.BUCKETS - 2))));
+                    sb.append('=').append(count);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Format statistics as a JSON document.
+     * @param all List of EvaluatorStatistics
+     * @return String
+     */
+    static String toJson(List all) {
+        StringBuffer sb = new StringBuffer("{\"evaluators\":[");
+        for (Iterator iter = all.iterator(); iter.hasNext();) {
+            EvaluatorStatistics stats = (EvaluatorStatistics) iter.next();
+            sb.append("{\"class\":\"");
+            String name = stats.getEvaluatorClass();
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if (c == '"' || c == '\\') {
+                    sb.append('\\');
+                }
+                sb.append(c);
+            }
+            sb.append("\",\"attempts\":").append(stats.getAttempts());
+            sb.append(",\"matches\":").append(stats.getMatches());
+            sb.append(",\"nulls\":").append(stats.getNulls());
+            sb.append(",\"exceptions\":").append(stats.getExceptions());
+            sb.append(",\"totalNanos\":").append(stats.getTotalNanos());
+            sb.append(",\"maxNanos\":").append(stats.getMaxNanos());
+            sb.append(",\"histogram\":[");
+            boolean first = true;
+            for (int i = 0; i < EvaluatorStatistics.BUCKETS; i++) {
+                long count = stats.getHistogramCount(i);
+                if (count > 0) {
+                    if (!first) {
+                        sb.append(',');
+                    }
+                    first = false;
+                    sb.append("{\"lessThanNanos\":");
+                    if (i < EvaluatorStatistics.BUCKETS - 1) {
+                        sb.append(EvaluatorStatistics.getBucketLimit(i));
+                    } else {
+                        sb.append("null");
+                    }
+                    sb.append(",\"count\":").append(count).append('}');
+                }
+            }
+            sb.append("]}");
+            if (iter.hasNext()) {
+                sb.append(',');
+            }
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 1000L) {
+            return nanos + "ns";
+        }
+        String[] units = { "us", "ms", "s" };
+        double value = nanos / 1e3;
+        int unit = 0;
+        while (value >= 1000 && unit < units.length - 1) {
+            value /= 1000;
+            unit++;
+        }
+        return String.format(Locale.ENGLISH, "%.1f%s",
+                new Object[] { Double.valueOf(value), units[unit] });
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.types.DataType;
+
+/**
+ * Text containing property references, parsed once into literal and reference
+ * nodes and rendered by walking them.  Rendering yields what
+ * <code>PropertyHelper.parseProperties()</code> would for the text, including
+ * nested references when a {@link NestedPropertyExpander} is active.
+ *
+ * <p>References are resolved through <code>PropertyHelper.getProperty()</code>,
+ * so the evaluators' {@link NameFilter}s reject names they cannot handle as
+ * they would during expansion.  Parsed texts are shared, so templates created
+ * over and over with the same text, e.g. in a macrodef, are parsed once.  With
+ * expanders other than Ant's own and a {@link NestedPropertyExpander} not
+ * short-circuiting, rendering falls back to <code>parseProperties()</code>.</p>
+ */
+public class Template extends DataType {
+    /** Maximum number of parsed texts shared between templates */
+    private static final int PARSED_CACHE_SIZE = 256;
+
+    private static final BoundedCache PARSED = new BoundedCache(PARSED_CACHE_SIZE);
+
+    /** Expanders of a PropertyHelper without any added */
+    private static final Collection DEFAULT_EXPANDERS = new PropertyHelper() {
+    } .getExpanders();
+
+    private String text;
+
+    private volatile Binding binding;
+
+    /**
+     * Part of a parsed text.
+     */
+    private abstract static class Node {
+        /**
+         * Render this node.
+         * @param binding to render with
+         * @return Object
+         */
+        abstract Object render(Binding binding);
+    }
+
+    /**
+     * Literal text.
+     */
+    private static final class Literal extends Node {
+        private final String text;
+
+        Literal(String text) {
+            this.text = text;
+        }
+
+        Object render(Binding binding) {
+            return text;
+        }
+    }
+
+    /**
+     * Property reference; rendered as its source text if it cannot be resolved.
+     */
+    private static class Reference extends Node {
+        private final String source;
+        private final String name;
+
+        /**
+         * Create a new Reference.
+         * @param source text
+         * @param name constant name, or <code>null</code>
+         */
+        Reference(String source, String name) {
+            this.source = source;
+            this.name = name;
+        }
+
+        Object render(Binding binding) {
+            return binding.resolve(getName(binding), source);
+        }
+
+        String getName(Binding binding) {
+            return name;
+        }
+    }
+
+    /**
+     * Property reference whose name contains other references.
+     */
+    private static final class NestedReference extends Reference {
+        private final Node[] parts;
+
+        NestedReference(String source, Node[] parts) {
+            super(source, null);
+            this.parts = parts;
+        }
+
+        String getName(Binding binding) {
+            if (parts.length == 1) {
+                return String.valueOf(parts[0].render(binding));
+            }
+            StringBuffer result = new StringBuffer();
+            for (int i = 0; i < parts.length; i++) {
+                result.append(parts[i].render(binding));
+            }
+            return result.toString();
+        }
+    }
+
+    /**
+     * Parser mirroring Ant's <code>ParseProperties</code> with Ant's own expanders,
+     * preceded by {@link NestedPropertyExpander} if <code>nested</code>.
+     */
+    private static final class Parser {
+        private final String text;
+        private final boolean nested;
+        private int pos;
+
+        Parser(String text, boolean nested) {
+            this.text = text;
+            this.nested = nested;
+        }
+
+        Node[] parse() {
+            ArrayList result = new ArrayList();
+            StringBuffer literal = new StringBuffer();
+            while (pos < text.length()) {
+                Node node = text.charAt(pos) == '$' ? next() : null;
+                if (node == null) {
+                    literal.append(text.charAt(pos++));
+                } else {
+                    flush(literal, result);
+                    result.add(node);
+                }
+            }
+            flush(literal, result);
+            return (Node[]) result.toArray(new Node[result.size()]);
+        }
+
+        /**
+         * Parse the reference at the current position, if any, like
+         * <code>ParseProperties.parseNextProperty()</code>; the position
+         * may have been advanced past a <code>$</code> escaping another.
+         */
+        private Node next() {
+            int start = pos;
+            if (nested) {
+                Node result = nextNested();
+                if (result != null) {
+                    return result;
+                }
+            }
+            int len = text.length();
+            if (len - start >= 3 && text.charAt(start) == '$' && text.charAt(start + 1) == '{') {
+                int close = text.indexOf('}', start + 2);
+                if (close < 0) {
+                    throw new BuildException("Syntax error in property: " + text.substring(start));
+                }
+                pos = close + 1;
+                return reference(start, close);
+            }
+            if (len - start >= 2 && text.charAt(start) == '$' && text.charAt(start + 1) == '$') {
+                pos = start + 1;
+            }
+            return null;
+        }
+
+        /**
+         * Parse a reference the way {@link NestedPropertyExpander} does.
+         */
+        private Node nextNested() {
+            int start = pos;
+            int len = text.length();
+            if (len - start < 3 || text.charAt(start) != '$' || text.charAt(start + 1) != '{') {
+                return null;
+            }
+            int close = text.indexOf('}', start + 2);
+            int dollar = text.indexOf('$', start + 2);
+            if (dollar < 0 || close >= 0 && close < dollar) {
+                if (close < 0) {
+                    return null;
+                }
+                pos = close + 1;
+                return reference(start, close);
+            }
+            ArrayList parts = new ArrayList();
+            StringBuffer literal = new StringBuffer();
+            for (int c = start + 2; c < len;) {
+                char ch = text.charAt(c);
+                if (ch == '}') {
+                    flush(literal, parts);
+                    pos = c + 1;
+                    return new NestedReference(text.substring(start, pos),
+                            (Node[]) parts.toArray(new Node[parts.size()]));
+                }
+                if (ch != '$') {
+                    literal.append(ch);
+                    c++;
+                    continue;
+                }
+                pos = c;
+                Node node = next();
+                c = pos;
+                if (node == null) {
+                    literal.append(text.charAt(c++));
+                } else {
+                    flush(literal, parts);
+                    parts.add(node);
+                }
+            }
+            pos = start;
+            return null;
+        }
+
+        /**
+         * Create the Reference from <code>start</code> to the current position.
+         */
+        private Node reference(int start, int close) {
+            return new Reference(text.substring(start, pos), text.substring(start + 2, close));
+        }
+
+        private static void flush(StringBuffer literal, List nodes) {
+            if (literal.length() > 0) {
+                nodes.add(new Literal(literal.toString()));
+                literal.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * Parsed text for the expanders of a PropertyHelper.
+     */
+    private static final class Binding {
+        private final PropertyHelper propertyHelper;
+        private final Collection expanders;
+        private final Node[] nodes;
+
+        Binding(PropertyHelper propertyHelper, Collection expanders, Node[] nodes) {
+            this.propertyHelper = propertyHelper;
+            this.expanders = expanders;
+            this.nodes = nodes;
+        }
+
+        boolean isCurrent(PropertyHelper propertyHelper) {
+            return propertyHelper == this.propertyHelper
+                    && propertyHelper.getExpanders() == expanders;
+        }
+
+        /**
+         * Resolve a property as <code>ParseProperties</code> does.
+         * @param name of the property
+         * @param source text of the reference
+         * @return the value of the property, or <code>source</code>
+         */
+        Object resolve(String name, String source) {
+            Object result = propertyHelper.getProperty(name);
+            if (result != null) {
+                return result;
+            }
+            Project project = propertyHelper.getProject();
+            if (project != null) {
+                project.log("Property \"" + name + "\" has not been set", Project.MSG_VERBOSE);
+            }
+            return source;
+        }
+
+        Object render() {
+            if (nodes.length == 1) {
+                return nodes[0].render(this);
+            }
+            StringBuffer result = new StringBuffer();
+            for (int i = 0; i < nodes.length; i++) {
+                result.append(nodes[i].render(this));
+            }
+            return result.toString();
+        }
+    }
+
+    /**
+     * Set the text to render.
+     * @param text String
+     */
+    public void setText(String text) {
+        checkAttributesAllowed();
+        this.text = text;
+        binding = null;
+    }
+
+    /**
+     * Add nested text to render.
+     * @param text String
+     */
+    public void addText(String text) {
+        checkChildrenAllowed();
+        this.text = this.text == null ? text : this.text + text;
+        binding = null;
+    }
+
+    /**
+     * Get the text to render.
+     * @return String
+     */
+    public String getText() {
+        return isReference() ? getRef().getText() : text;
+    }
+
+    /**
+     * Render this template with the PropertyHelper of its project.
+     * @return Object, a String unless the text is a single reference
+     */
+    public Object render() {
+        return render(PropertyHelper.getPropertyHelper(getProject()));
+    }
+
+    /**
+     * Render this template.
+     * @param propertyHelper to resolve properties with
+     * @return Object, a String unless the text is a single reference
+     */
+    public Object render(PropertyHelper propertyHelper) {
+        if (isReference()) {
+            return getRef().render(propertyHelper);
+        }
+        if (text == null || text.length() == 0) {
+            return text;
+        }
+        Binding b = binding;
+        if (b == null || !b.isCurrent(propertyHelper)) {
+            b = bind(propertyHelper);
+            if (b == null) {
+                return propertyHelper.parseProperties(text);
+            }
+            binding = b;
+        }
+        return b.render();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String toString() {
+        Object result = render();
+        return result == null ? null : result.toString();
+    }
+
+    private Template getRef() {
+        return getCheckedRef(Template.class);
+    }
+
+    /**
+     * Bind this template to <code>propertyHelper</code>.
+     * @return Binding, or <code>null</code> if its expanders are not supported
+     */
+    private Binding bind(PropertyHelper propertyHelper) {
+        Collection expanders = propertyHelper.getExpanders();
+        boolean nested = false;
+        boolean defaults = false;
+        for (Iterator iter = expanders.iterator(); iter.hasNext();) {
+            Object expander = iter.next();
+            if (DEFAULT_EXPANDERS.contains(expander)) {
+                defaults = true;
+            } else if (expander instanceof NestedPropertyExpander && !defaults
+                    && !((NestedPropertyExpander) expander).isShortCircuit()) {
+                nested = true;
+            } else {
+                return null;
+            }
+        }
+        if (!defaults) {
+            return null;
+        }
+        return new Binding(propertyHelper, expanders, parse(text, nested));
+    }
+
+    private static Node[] parse(String text, boolean nested) {
+        String key = (nested ? '+' : '-') + text;
+        Node[] result = (Node[]) PARSED.get(key);
+        if (result == null) {
+            result = new Parser(text, nested).parse();
+            PARSED.put(key, result);
+        }
+        return result;
+    }
+}
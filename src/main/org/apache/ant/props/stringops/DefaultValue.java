@@ -34,6 +34,11 @@ public class DefaultValue extends RegexBasedEvaluator {
         super("(.*):-(.*)");
     }
 
+    /** {@inheritDoc} */
+    protected String[] match(String propertyName) {
+        return OperatorScanner.splitLineAtLast(propertyName, ":-");
+    }
+
     /** {@inheritDoc} */
     protected Object evaluate(String[] groups, PropertyHelper propertyHelper) {
         Object o = (String) propertyHelper.getProperty(groups[1]);
@@ -31,6 +31,11 @@ public class DeleteFromEndGreedy extends DeletePartOperation {
         super("^(.*)%%(.*)$", GREEDY);
     }
 
+    /** {@inheritDoc} */
+    protected String[] match(String propertyName) {
+        return OperatorScanner.splitAtLast(propertyName, "%%");
+    }
+
     /** {@inheritDoc} */
     protected String specializePattern(String pattern) {
         return "^(.*?)(?:" + pattern + ")$";
@@ -38,10 +43,15 @@ public class DeleteFromEndGreedy extends DeletePartOperation {
 
     /**
      * {@inheritDoc}
-     * @see org.apache.ant.props.stringops.PatternOperation#convertToRegex(java.lang.StringBuffer, boolean)
+     * @see org.apache.ant.props.stringops.PatternOperation#unescape(java.lang.String)
      */
-    protected void convertToRegex(StringBuffer sb, boolean greedy) {
-        deEscape('%', sb);
-        super.convertToRegex(sb, greedy);
+    protected String unescape(String pattern) {
+        return unescape('%', pattern);
+    }
+
+    /** {@inheritDoc} */
+    protected String deletePart(GlobMatcher glob, String value) {
+        int start = glob.suffixStart(value, true);
+        return start < 0 ? value : value.substring(0, start);
     }
 }
@@ -43,17 +43,25 @@ public abstract class DeletePartOperation extends PatternOperation {
     protected Object evaluate(String[] groups, PropertyHelper propertyHelper) {
         Object value = propertyHelper.getProperty(groups[1]);
         if (value != null) {
+            GlobMatcher glob = compileGlob(groups[2], greedy);
             String s = value.toString();
-            StringBuffer sb = new StringBuffer(groups[2]);
-            convertToRegex(sb, greedy);
-            String specialized = specializePattern(sb.toString());
-            Regexp regexp = createRegexp(specialized, propertyHelper.getProject());
-            String result = regexp.substitute(s, "\\1", Regexp.REPLACE_FIRST);
-            return result;
+            return glob.canMatch(s) ? deletePart(glob, s)
+                : substitute(glob.getPattern(), s, "\\1", Regexp.REPLACE_FIRST);
         }
         return null;
     }
 
+    /**
+     * Delete the part of a value matched by a GlobMatcher, when {@link GlobMatcher#canMatch(String)}.
+     * This implementation uses the regex.
+     * @param glob the GlobMatcher.
+     * @param value the String to operate on.
+     * @return String
+     */
+    protected String deletePart(GlobMatcher glob, String value) {
+        return substitute(glob.getPattern(), value, "\\1", Regexp.REPLACE_FIRST);
+    }
+
     /**
      * Specialize the RE pattern for the purposes of the specific subclass.
      * @param pattern partial RE pattern.
@@ -0,0 +1,349 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props.stringops;
+
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.tools.ant.BuildException;
+
+/**
+ * Compiled *nix-style pattern used by the delete and replace operations.
+ * Patterns made of literals, <code>?</code>, <code>*</code> and separators are
+ * matched without regular expressions in time linear in the length of the value
+ * (times the pattern length), producing the same results the equivalent regex would.
+ * Anything else, e.g. a regex construct passed through by the pattern conversion,
+ * leaves only the regex available; see {@link #canMatch(String)}.
+ */
+public final class GlobMatcher {
+    private static final byte LITERAL = 0;
+    private static final byte ANY = 1;
+    private static final byte SEPARATOR = 2;
+
+    /** Characters the conversion passes through but that mean something to a regex. */
+    private static final String REGEX_SPECIALS = "^$|+()[]{}";
+
+    private final String regex;
+    private volatile Pattern pattern;
+
+    // the pattern split at '*'; null if not supported:
+    private final char[][] chars;
+    private final byte[][] types;
+
+    /**
+     * Create a new GlobMatcher.
+     * @param glob the *nix-style pattern, operation-specific escapes already removed.
+     * @param regex the equivalent regular expression.
+     */
+    GlobMatcher(String glob, String regex) {
+        this.regex = regex;
+        ArrayList segments = parse(glob);
+        if (segments == null) {
+            chars = null;
+            types = null;
+        } else {
+            int count = segments.size() / 2;
+            chars = new char[count][];
+            types = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                chars[i] = (char[]) segments.get(i * 2);
+                types[i] = (byte[]) segments.get(i * 2 + 1);
+            }
+        }
+    }
+
+    /**
+     * Get the equivalent compiled regular expression.
+     * @return Pattern
+     */
+    public Pattern getPattern() {
+        Pattern result = pattern;
+        if (result == null) {
+            try {
+                // be strict about line separator, as Ant's Regexp is:
+                result = Pattern.compile(regex, Pattern.UNIX_LINES);
+            } catch (PatternSyntaxException e) {
+                throw new BuildException(e);
+            }
+            pattern = result;
+        }
+        return result;
+    }
+
+    /**
+     * Learn whether this GlobMatcher can match the specified value without
+     * resorting to its regular expression.  This is not the case for unsupported
+     * patterns or for values containing line terminators or surrogate characters,
+     * whose treatment by the regex engine is not emulated.
+     * @param value to match
+     * @return boolean
+     */
+    public boolean canMatch(String value) {
+        if (chars == null) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\n' || c >= '\uD800' && c <= '\uDFFF') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Match a prefix of the specified value.
+     * @param value to match
+     * @param longest whether to find the longest, rather than the shortest, match.
+     * @return the end index of the matched prefix, or -1.
+     */
+    public int prefixEnd(String value, boolean longest) {
+        int last = chars.length - 1;
+        int first = chars[0].length;
+        if (first > value.length() || !matchesAt(0, value, 0)) {
+            return -1;
+        }
+        if (last == 0) {
+            return first;
+        }
+        if (longest) {
+            int limit = value.length();
+            int end = -1;
+            for (int i = last; i > 0; i--) {
+                int p = latest(i, value, first, limit - chars[i].length);
+                if (p < 0) {
+                    return -1;
+                }
+                if (i == last) {
+                    end = p + chars[i].length;
+                }
+                limit = p;
+            }
+            return end;
+        }
+        int pos = first;
+        for (int i = 1; i <= last; i++) {
+            int p = earliest(i, value, pos, value.length() - chars[i].length);
+            if (p < 0) {
+                return -1;
+            }
+            pos = p + chars[i].length;
+        }
+        return pos;
+    }
+
+    /**
+     * Match a suffix of the specified value.
+     * @param value to match
+     * @param longest whether to find the longest, rather than the shortest, match.
+     * @return the start index of the matched suffix, or -1.
+     */
+    public int suffixStart(String value, boolean longest) {
+        int last = chars.length - 1;
+        int first = chars[0].length;
+        if (last == 0) {
+            int start = value.length() - first;
+            return start >= 0 && matchesAt(0, value, start) ? start : -1;
+        }
+        int limit = value.length() - chars[last].length;
+        if (limit < 0 || !matchesAt(last, value, limit)) {
+            return -1;
+        }
+        for (int i = last - 1; i > 0; i--) {
+            limit = latest(i, value, first, limit - chars[i].length);
+            if (limit < 0) {
+                return -1;
+            }
+        }
+        return longest ? earliest(0, value, 0, limit - first) : latest(0, value, 0, limit - first);
+    }
+
+    /**
+     * Replace matches in the specified value, leftmost first, each as long as possible.
+     * @param value to operate on
+     * @param replacement literal replacement text
+     * @param all whether to replace all matches, rather than only the first
+     * @return String
+     */
+    public String replace(String value, String replacement, boolean all) {
+        int length = value.length();
+        int last = chars.length - 1;
+        int first = chars[0].length;
+        // without '*' a match is exactly as long as the pattern; else it must leave room
+        // for the remaining segments, and greedily extends to their latest position:
+        int maxStart = length - first;
+        int end = -1;
+        if (last > 0) {
+            int limit = length;
+            for (int i = last; i > 0; i--) {
+                int p = latest(i, value, first, limit - chars[i].length);
+                if (p < 0) {
+                    return value;
+                }
+                if (i == last) {
+                    end = p + chars[i].length;
+                }
+                limit = p;
+            }
+            maxStart = limit - first;
+        }
+        StringBuffer sb = null;
+        int copied = 0;
+        int from = 0;
+        while (from <= length) {
+            int start = earliest(0, value, from, maxStart);
+            if (start < 0) {
+                break;
+            }
+            int matchEnd = last == 0 ? start + first : end;
+            if (sb == null) {
+                sb = new StringBuffer(length + replacement.length());
+            }
+            sb.append(value.substring(copied, start)).append(replacement);
+            copied = matchEnd;
+            if (!all) {
+                break;
+            }
+            // as java.util.regex.Matcher.find(), step past empty matches:
+            from = matchEnd == start ? matchEnd + 1 : matchEnd;
+        }
+        if (sb == null) {
+            return value;
+        }
+        return sb.append(value.substring(copied)).toString();
+    }
+
+    private int earliest(int segment, String value, int from, int to) {
+        int literal = literalStart(segment);
+        for (int p = from; p <= to; p++) {
+            if (literal >= 0) {
+                p = value.indexOf(literal, p);
+                if (p < 0 || p > to) {
+                    return -1;
+                }
+            }
+            if (matchesAt(segment, value, p)) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    private int latest(int segment, String value, int from, int to) {
+        int literal = literalStart(segment);
+        for (int p = to; p >= from; p--) {
+            if (literal >= 0) {
+                p = value.lastIndexOf(literal, p);
+                if (p < from) {
+                    return -1;
+                }
+            }
+            if (matchesAt(segment, value, p)) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the literal character a segment starts with, if any, to skip ahead with.
+     */
+    private int literalStart(int segment) {
+        return chars[segment].length > 0 && types[segment][0] == LITERAL ? chars[segment][0] : -1;
+    }
+
+    private boolean matchesAt(int segment, String value, int pos) {
+        char[] c = chars[segment];
+        byte[] t = types[segment];
+        for (int i = 0; i < c.length; i++) {
+            char v = value.charAt(pos + i);
+            switch (t[i]) {
+            case ANY:
+                break;
+            case SEPARATOR:
+                // the regex has always been [/|\\]:
+                if (v != '/' && v != '\\' && v != '|') {
+                    return false;
+                }
+                break;
+            default:
+                if (v != c[i]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse a pattern just as PatternOperation#convertToRegex does.
+     * @return alternating char[] and byte[] per '*'-delimited segment, or null.
+     */
+    private static ArrayList parse(String glob) {
+        ArrayList result = new ArrayList();
+        StringBuffer segmentChars = new StringBuffer();
+        StringBuffer segmentTypes = new StringBuffer();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            byte type = LITERAL;
+            if (c == '/' || glob.startsWith("\\\\", i)) {
+                if (c == '\\') {
+                    i++;
+                }
+                type = SEPARATOR;
+            } else if (c == '\\') {
+                if (++i == glob.length()) {
+                    return null;
+                }
+                c = glob.charAt(i);
+                if (Character.isLetterOrDigit(c)) {
+                    // a regex construct:
+                    return null;
+                }
+            } else if (c == '?') {
+                type = ANY;
+            } else if (c == '*') {
+                addSegment(result, segmentChars, segmentTypes);
+                continue;
+            } else if (REGEX_SPECIALS.indexOf(c) >= 0) {
+                return null;
+            }
+            segmentChars.append(c);
+            segmentTypes.append((char) type);
+        }
+        addSegment(result, segmentChars, segmentTypes);
+        return result;
+    }
+
+    private static void addSegment(ArrayList segments, StringBuffer segmentChars,
+            StringBuffer segmentTypes) {
+        char[] c = new char[segmentChars.length()];
+        segmentChars.getChars(0, c.length, c, 0);
+        byte[] t = new byte[segmentTypes.length()];
+        for (int i = 0; i < t.length; i++) {
+            t[i] = (byte) segmentTypes.charAt(i);
+        }
+        segments.add(c);
+        segments.add(t);
+        segmentChars.setLength(0);
+        segmentTypes.setLength(0);
+    }
+}
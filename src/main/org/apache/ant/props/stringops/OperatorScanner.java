@@ -0,0 +1,278 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props.stringops;
+
+/**
+ * Single-pass scanner that learns which string operations' syntax a property
+ * name can possibly match, plus literal splitting of a property name into the
+ * same groups those operations' regular expressions would produce, in time
+ * linear in the length of the name however malformed it is.
+ */
+final class OperatorScanner {
+    static final int SUBSTRING = 1 << 0;
+    static final int DEFAULT_VALUE = 1 << 1;
+    static final int SET_DEFAULT_VALUE = 1 << 2;
+    static final int TRANSLATE = 1 << 3;
+    static final int REQUIRE_PROPERTY = 1 << 4;
+    static final int DELETE_FROM_START_GREEDY = 1 << 5;
+    static final int DELETE_FROM_START_RELUCTANT = 1 << 6;
+    static final int DELETE_FROM_END_GREEDY = 1 << 7;
+    static final int DELETE_FROM_END_RELUCTANT = 1 << 8;
+    static final int REPLACE = 1 << 9;
+
+    /** Matches everything; used for operations we know nothing about. */
+    static final int ALL = (1 << 10) - 1;
+
+    private OperatorScanner() {
+    }
+
+    /**
+     * Get the operation kind implemented by the specified delegate.
+     * @param delegate the evaluator
+     * @return operation bit, or {@link #ALL} if <code>delegate</code> is no stock operation.
+     */
+    static int kindOf(Object delegate) {
+        Class c = delegate.getClass();
+        return c == Substring.class ? SUBSTRING
+            : c == DefaultValue.class ? DEFAULT_VALUE
+            : c == SetDefaultValue.class ? SET_DEFAULT_VALUE
+            : c == Translate.class ? TRANSLATE
+            : c == RequireProperty.class ? REQUIRE_PROPERTY
+            : c == DeleteFromStartGreedy.class ? DELETE_FROM_START_GREEDY
+            : c == DeleteFromStartReluctant.class ? DELETE_FROM_START_RELUCTANT
+            : c == DeleteFromEndGreedy.class ? DELETE_FROM_END_GREEDY
+            : c == DeleteFromEndReluctant.class ? DELETE_FROM_END_RELUCTANT
+            : c == ReplaceOperation.class ? REPLACE
+            : ALL;
+    }
+
+    /**
+     * Scan a property name for operator tokens.
+     * @param s the property name
+     * @return bitmask of the operations whose syntax <code>s</code> may match;
+     *         <code>0</code> for a plain property name.
+     */
+    static int scan(String s) {
+        int result = 0;
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            char next = i + 1 < length ? s.charAt(i + 1) : 0;
+            switch (c) {
+            case ':':
+                switch (next) {
+                case '-':
+                    result |= DEFAULT_VALUE;
+                    break;
+                case '=':
+                    result |= SET_DEFAULT_VALUE;
+                    break;
+                case '+':
+                    result |= TRANSLATE;
+                    break;
+                case '?':
+                    result |= REQUIRE_PROPERTY;
+                    break;
+                default:
+                    if (isDigit(next)) {
+                        result |= SUBSTRING;
+                    }
+                }
+                break;
+            case '#':
+                result |= next == '#' ? DELETE_FROM_START_GREEDY | DELETE_FROM_START_RELUCTANT
+                    : DELETE_FROM_START_RELUCTANT;
+                break;
+            case '%':
+                result |= next == '%' ? DELETE_FROM_END_GREEDY | DELETE_FROM_END_RELUCTANT
+                    : DELETE_FROM_END_RELUCTANT;
+                break;
+            case '/':
+                result |= REPLACE;
+                break;
+            default:
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Emulate <code>^(.*)TOKEN(.*)$</code>.
+     * @param s the property name
+     * @param token the operator
+     * @return String[] groups or <code>null</code>
+     */
+    static String[] splitAtLast(String s, String token) {
+        return splitAtLast(s, token, (char) 0);
+    }
+
+    /**
+     * Emulate <code>^(.*)TOKEN([^EXCLUDE]?.*)$</code>, or <code>^(.*)TOKEN(.*)$</code>
+     * if <code>exclude</code> is <code>0</code>.  As with the regular expression,
+     * <code>.</code> matches anything but a line feed and <code>$</code> matches
+     * before a final line feed, whereas <code>[^EXCLUDE]</code> matches line feeds.
+     * @param s the property name
+     * @param token the operator, containing no line feed
+     * @param exclude char
+     * @return String[] groups or <code>null</code>
+     */
+    static String[] splitAtLast(String s, String token, char exclude) {
+        int length = s.length();
+        int firstLine = lineEnd(s, 0);
+        int end = firstLine == length || firstLine == length - 1 ? firstLine : -1;
+        if (end < 0 && exclude == 0) {
+            return null;
+        }
+        // (.*) cannot leave the first line; try the longest first:
+        int index = s.lastIndexOf(token, firstLine - token.length());
+        for (; index >= 0; index = s.lastIndexOf(token, index - 1)) {
+            int from = index + token.length();
+            if (exclude != 0 && from < length && s.charAt(from) != exclude) {
+                int tail = from == firstLine ? lineEnd(s, from + 1) : firstLine;
+                if (tail == length || tail == length - 1) {
+                    return groups(s, index, from, tail);
+                }
+            }
+            if (end >= 0) {
+                return groups(s, index, from, end);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Emulate the unanchored <code>(.*)TOKEN(.*)</code>: the first line containing
+     * <code>token</code> is split at its last occurrence.
+     * @param s the property name
+     * @param token the operator, containing no line feed
+     * @return String[] groups or <code>null</code>
+     */
+    static String[] splitLineAtLast(String s, String token) {
+        int index = s.indexOf(token);
+        if (index < 0) {
+            return null;
+        }
+        int start = s.lastIndexOf('\n', index) + 1;
+        int end = lineEnd(s, index);
+        index = s.lastIndexOf(token, end - token.length());
+        return new String[] { s.substring(start, end), s.substring(start, index),
+            s.substring(index + token.length(), end) };
+    }
+
+    /**
+     * Emulate <code>^(.*):(\d+):(\d+)$</code>.
+     * @param s the property name
+     * @return String[] groups or <code>null</code>
+     */
+    static String[] splitSubstring(String s) {
+        int end = lineEnd(s, 0);
+        if (end < s.length() - 1) {
+            return null;
+        }
+        int lastColon = skipDigitsBackward(s, end);
+        if (lastColon == end || lastColon < 0 || s.charAt(lastColon) != ':') {
+            return null;
+        }
+        int colon = skipDigitsBackward(s, lastColon);
+        if (colon == lastColon || colon < 0 || s.charAt(colon) != ':') {
+            return null;
+        }
+        return new String[] { s.substring(0, end), s.substring(0, colon),
+            s.substring(colon + 1, lastColon), s.substring(lastColon + 1, end) };
+    }
+
+    /**
+     * Emulate <code>^(W)(//?)(W)/(W)$</code> where <code>W</code> is
+     * <code>(?:\\/|[^/])*</code>, in linear time.  From any position
+     * <code>W</code> can end anywhere up to the first unescaped slash, so each
+     * backtracking step the regular expression would take is a table lookup.
+     * @param s the property name
+     * @return String[] groups or <code>null</code>
+     */
+    static String[] splitReplace(String s) {
+        int length = s.length();
+        // extent[p]: where W starting at p must stop
+        int[] extent = new int[length + 2];
+        extent[length] = length;
+        extent[length + 1] = length;
+        for (int p = length - 1; p >= 0; p--) {
+            char c = s.charAt(p);
+            extent[p] = c == '/' ? p
+                : c == '\\' && p + 1 < length && s.charAt(p + 1) == '/' ? extent[p + 2]
+                : extent[p + 1];
+        }
+        // separator[x]: the last slash at or before x that W can follow to the end
+        int[] separator = new int[length];
+        int last = -1;
+        for (int x = 0; x < length; x++) {
+            if (s.charAt(x) == '/' && extent[x + 1] == length) {
+                last = x;
+            }
+            separator[x] = last;
+        }
+        for (int end1 = Math.min(extent[0], length - 1); end1 >= 0; end1--) {
+            if (s.charAt(end1) != '/') {
+                continue;
+            }
+            for (int from = end1 + 2; from > end1; from--) {
+                if (from == end1 + 2 && (from > length || s.charAt(end1 + 1) != '/')) {
+                    continue;
+                }
+                int end2 = from < length ? separator[Math.min(extent[from], length - 1)] : -1;
+                if (end2 >= from) {
+                    return new String[] { s, s.substring(0, end1), s.substring(end1, from),
+                        s.substring(from, end2), s.substring(end2 + 1) };
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the index of the first line feed at or after <code>from</code>, or the length.
+     */
+    private static int lineEnd(String s, int from) {
+        int result = s.indexOf('\n', from);
+        return result < 0 ? s.length() : result;
+    }
+
+    /**
+     * Build groups for a split with <code>(.*)</code> ending at <code>index</code>
+     * and the second group running from <code>from</code> to <code>end</code>.
+     */
+    private static String[] groups(String s, int index, int from, int end) {
+        return new String[] { s.substring(0, end), s.substring(0, index), s.substring(from, end) };
+    }
+
+    /**
+     * Get the index of the last non-digit before <code>end</code>, or -1.
+     */
+    private static int skipDigitsBackward(String s, int end) {
+        int i = end - 1;
+        while (i >= 0 && isDigit(s.charAt(i))) {
+            i--;
+        }
+        return i == end - 1 ? end : i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.ant.props.stringops;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ant.props.BoundedCache;
+
+/**
+ * Size-bounded, approximately least-recently-used cache of {@link GlobMatcher}s
+ * for {@link PatternOperation}s, keyed by (raw pattern, greedy/reluctant,
+ * operation).  Keeps hit, miss and eviction counts to help size it.  Lookups
+ * take no lock, see {@link BoundedCache}.
+ */
+public class PatternCache {
+    /** Default maximum number of entries */
+    public static final int DEFAULT_MAX_SIZE = 128;
+
+    private static final class Key {
+        private final String pattern;
+        private final boolean greedy;
+        private final Class operation;
+        private final int hashCode;
+
+        Key(String pattern, boolean greedy, Class operation) {
+            this.pattern = pattern;
+            this.greedy = greedy;
+            this.operation = operation;
+            this.hashCode = (pattern.hashCode() * 31 + operation.hashCode()) * 2 + (greedy ? 1 : 0);
+        }
+
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj instanceof Key == false) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return other.greedy == greedy && other.operation == operation
+                    && other.pattern.equals(pattern);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private final BoundedCache entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a new PatternCache of {@link #DEFAULT_MAX_SIZE}.
+     */
+    public PatternCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Create a new PatternCache.
+     * @param maxSize the maximum number of entries
+     */
+    public PatternCache(int maxSize) {
+        entries = new BoundedCache(maxSize);
+    }
+
+    /**
+     * Get a cached compiled pattern.
+     * @param pattern the raw *nix-style pattern
+     * @param greedy whether greedy
+     * @param operation the operation class
+     * @return GlobMatcher or <code>null</code>
+     */
+    GlobMatcher get(String pattern, boolean greedy, Class operation) {
+        GlobMatcher result = (GlobMatcher) entries.get(new Key(pattern, greedy, operation));
+        if (result == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Cache a compiled pattern.
+     * @param pattern the raw *nix-style pattern
+     * @param greedy whether greedy
+     * @param operation the operation class
+     * @param compiled the compiled pattern
+     */
+    void put(String pattern, boolean greedy, Class operation, GlobMatcher compiled) {
+        entries.put(new Key(pattern, greedy, operation), compiled);
+    }
+
+    /**
+     * Set the maximum number of entries; <code>0</code> disables caching.
+     * @param maxSize int
+     */
+    public void setMaxSize(int maxSize) {
+        entries.setMaxSize(maxSize);
+    }
+
+    /**
+     * Get the maximum number of entries.
+     * @return int
+     */
+    public int getMaxSize() {
+        return entries.getMaxSize();
+    }
+
+    /**
+     * Get the current number of entries.
+     * @return int
+     */
+    public int getSize() {
+        return entries.getSize();
+    }
+
+    /**
+     * Get the number of lookups that found a cached pattern.
+     * @return long
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of lookups that found no cached pattern.
+     * @return long
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of entries evicted to honor the maximum size.
+     * @return long
+     */
+    public long getEvictions() {
+        return entries.getEvictions();
+    }
+
+    /**
+     * Remove all entries and reset the statistics.
+     */
+    public void clear() {
+        entries.clear();
+        hits.set(0);
+        misses.set(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String toString() {
+        return "PatternCache[size=" + getSize() + "/" + getMaxSize() + ", hits=" + getHits()
+                + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+    }
+}
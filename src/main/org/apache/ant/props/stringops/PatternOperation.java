@@ -20,8 +20,12 @@
 package org.apache.ant.props.stringops;
 
 import java.text.ParsePosition;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.apache.ant.props.RegexBasedEvaluator;
+import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.types.RegularExpression;
 import org.apache.tools.ant.util.regexp.Regexp;
@@ -94,6 +98,8 @@ public abstract class PatternOperation extends RegexBasedEvaluator {
         new CharToPattern('*', ".*?")
     };
 
+    private PatternCache patternCache = new PatternCache();
+
     /**
      * Construct a new PatternOperation.
      */
@@ -101,6 +107,134 @@ public abstract class PatternOperation extends RegexBasedEvaluator {
         super(regex);
     }
 
+    /**
+     * Set the cache of compiled patterns to use.
+     * @param patternCache PatternCache
+     */
+    public void setPatternCache(PatternCache patternCache) {
+        if (patternCache == null) {
+            throw new IllegalArgumentException("null pattern cache");
+        }
+        this.patternCache = patternCache;
+    }
+
+    /**
+     * Get the cache of compiled patterns in use.
+     * @return PatternCache
+     */
+    public PatternCache getPatternCache() {
+        return patternCache;
+    }
+
+    /**
+     * Get the compiled regex for a *nix-style pattern, consulting the pattern cache.
+     * @param pattern the *nix-style pattern.
+     * @param greedy whether to be greedy.
+     * @return Pattern
+     */
+    protected Pattern compile(String pattern, boolean greedy) {
+        return compileGlob(pattern, greedy).getPattern();
+    }
+
+    /**
+     * Get the GlobMatcher for a *nix-style pattern, consulting the pattern cache.
+     * @param pattern the *nix-style pattern.
+     * @param greedy whether to be greedy.
+     * @return GlobMatcher
+     */
+    protected GlobMatcher compileGlob(String pattern, boolean greedy) {
+        PatternCache cache = patternCache;
+        GlobMatcher result = cache.get(pattern, greedy, getClass());
+        if (result == null) {
+            String unescaped = unescape(pattern);
+            StringBuffer sb = new StringBuffer(unescaped);
+            convertToRegex(sb, greedy);
+            result = new GlobMatcher(unescaped, specializePattern(sb.toString()));
+            cache.put(pattern, greedy, getClass(), result);
+        }
+        return result;
+    }
+
+    /**
+     * Remove the escaping of this operation's syntax characters from a *nix-style
+     * pattern.  This implementation returns the pattern unchanged.
+     * @param pattern the *nix-style pattern.
+     * @return String
+     */
+    protected String unescape(String pattern) {
+        return pattern;
+    }
+
+    /**
+     * Remove the escaping of a given character from a *nix-style pattern.
+     * @param c the character to "unmask".
+     * @param pattern the *nix-style pattern.
+     * @return String
+     */
+    protected String unescape(char c, String pattern) {
+        if (pattern.indexOf('\\') < 0) {
+            return pattern;
+        }
+        StringBuffer sb = new StringBuffer(pattern);
+        deEscape(c, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Specialize the regex converted from a *nix-style pattern for the purposes
+     * of this operation.  This implementation returns the pattern unchanged.
+     * @param pattern partial RE pattern.
+     * @return String
+     */
+    protected String specializePattern(String pattern) {
+        return pattern;
+    }
+
+    /**
+     * Substitute matches of a compiled pattern, interpreting the replacement
+     * just as Ant's <code>Regexp</code> does: <code>\<em>n</em></code> denotes group
+     * <em>n</em>, other backslash-escaped characters are taken literally.
+     * @param pattern the compiled Pattern.
+     * @param input the String to operate on.
+     * @param argument the replacement.
+     * @param options <code>Regexp.REPLACE_FIRST</code> or <code>Regexp.REPLACE_ALL</code>.
+     * @return String
+     */
+    protected String substitute(Pattern pattern, String input, String argument, int options) {
+        StringBuffer subst = new StringBuffer(argument.length() + 4);
+        for (int i = 0; i < argument.length(); i++) {
+            char c = argument.charAt(i);
+            if (c == '$') {
+                subst.append("\\$");
+            } else if (c == '\\') {
+                if (++i < argument.length()) {
+                    c = argument.charAt(i);
+                    int group = Character.digit(c, 10);
+                    if (group > -1) {
+                        subst.append('$').append(group);
+                    } else {
+                        subst.append(c);
+                    }
+                } else {
+                    subst.append('\\');
+                }
+            } else {
+                subst.append(c);
+            }
+        }
+        Matcher m = pattern.matcher(input);
+        if ((options & Regexp.REPLACE_ALL) != 0) {
+            return m.replaceAll(subst.toString());
+        }
+        if (m.find()) {
+            StringBuffer sb = new StringBuffer(input.length());
+            m.appendReplacement(sb, subst.toString());
+            m.appendTail(sb);
+            return sb.toString();
+        }
+        return input;
+    }
+
     /**
      * Convert a *nix-style pattern to a regex pattern.
      * @param sb StringBuffer to convert.
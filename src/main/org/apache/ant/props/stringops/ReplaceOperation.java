@@ -38,23 +38,34 @@ public class ReplaceOperation extends PatternOperation {
         super(RE);
     }
 
+    /** {@inheritDoc} */
+    protected String[] match(String propertyName) {
+        return OperatorScanner.splitReplace(propertyName);
+    }
+
     /** {@inheritDoc} */
     protected final Object evaluate(String[] groups, PropertyHelper propertyHelper) {
         Object value = propertyHelper.getProperty(groups[1]);
-        int replaceOption = "//".equals(groups[2]) ? Regexp.REPLACE_ALL : Regexp.REPLACE_FIRST;
-        StringBuffer sb = new StringBuffer(groups[3]);
-        convertToRegex(sb);
-        return value == null ? null : createRegexp(sb.toString(), propertyHelper.getProject())
-                .substitute(value.toString(), groups[4], replaceOption);
+        if (value == null) {
+            return null;
+        }
+        boolean all = "//".equals(groups[2]);
+        GlobMatcher glob = compileGlob(groups[3], true);
+        String s = value.toString();
+        // the replacement can refer to groups and escape characters:
+        if (glob.canMatch(s) && groups[4].indexOf('\\') < 0) {
+            return glob.replace(s, groups[4], all);
+        }
+        return substitute(glob.getPattern(), s, groups[4],
+                all ? Regexp.REPLACE_ALL : Regexp.REPLACE_FIRST);
     }
 
     /**
      * {@inheritDoc}
-     * @see org.apache.ant.props.stringops.PatternOperation#convertToRegex(java.lang.StringBuffer)
+     * @see org.apache.ant.props.stringops.PatternOperation#unescape(java.lang.String)
      */
-    protected void convertToRegex(StringBuffer sb) {
-        deEscape('/', sb);
-        super.convertToRegex(sb);
+    protected String unescape(String pattern) {
+        return unescape('/', pattern);
     }
 
 }
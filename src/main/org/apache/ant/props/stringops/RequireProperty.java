@@ -36,6 +36,11 @@ public class RequireProperty extends RegexBasedEvaluator {
         super("^(.*):\\?(.*)$");
     }
 
+    /** {@inheritDoc} */
+    protected String[] match(String propertyName) {
+        return OperatorScanner.splitAtLast(propertyName, ":?");
+    }
+
     /** {@inheritDoc} */
     protected Object evaluate(String[] groups, PropertyHelper propertyHelper) {
         String result = (String) propertyHelper.getProperty(groups[1]);
@@ -34,6 +34,11 @@ public class SetDefaultValue extends RegexBasedEvaluator {
         super("^(.*):=(.*)$");
     }
 
+    /** {@inheritDoc} */
+    protected String[] match(String propertyName) {
+        return OperatorScanner.splitAtLast(propertyName, ":=");
+    }
+
     /** {@inheritDoc} */
     protected Object evaluate(String[] groups, PropertyHelper propertyHelper) {
         Object result = propertyHelper.getProperty(groups[1]);
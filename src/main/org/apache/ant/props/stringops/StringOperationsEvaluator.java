@@ -19,12 +19,28 @@
  */
 package org.apache.ant.props.stringops;
 
+import java.util.List;
+
 import org.apache.ant.props.DelegatingPropertyEvaluator;
+import org.apache.ant.props.NameFilter;
+import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.PropertyHelper.PropertyEvaluator;
 
 /**
  * PropertyEvaluator to apply *nix-style string operations to Ant properties.
+ * A single scan of the property name for operator tokens selects the operations
+ * to consult, so that plain property names are rejected immediately.
  */
 public class StringOperationsEvaluator extends DelegatingPropertyEvaluator {
+    /** Characters the stock operations start with; see {@link OperatorScanner} */
+    private static final NameFilter NAME_FILTER = NameFilter.containingAny(":#%/\n");
+
+    /** Operator kinds of the delegates, by index in getDelegates() */
+    private int[] kinds = new int[0];
+    private int anyKind;
+    private boolean unknownKinds;
+    private final PatternCache patternCache = new PatternCache();
+
     /**
      * Construct a new StringOperationsEvaluator.
      */
@@ -41,4 +57,74 @@ public class StringOperationsEvaluator extends DelegatingPropertyEvaluator {
         addDelegate(new ReplaceOperation());
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    protected void addDelegate(PropertyEvaluator propertyEvaluator) {
+        super.addDelegate(propertyEvaluator);
+        if (propertyEvaluator instanceof PatternOperation) {
+            ((PatternOperation) propertyEvaluator).setPatternCache(patternCache);
+        }
+        int kind = OperatorScanner.kindOf(propertyEvaluator);
+        int[] newKinds = new int[kinds.length + 1];
+        System.arraycopy(kinds, 0, newKinds, 0, kinds.length);
+        newKinds[kinds.length] = kind;
+        kinds = newKinds;
+        anyKind |= kind;
+        unknownKinds |= kind == OperatorScanner.ALL;
+    }
+
+    /**
+     * Set the maximum number of compiled patterns to cache for the delete/replace
+     * operations; <code>0</code> disables caching.
+     * @param patternCacheSize int
+     */
+    public void setPatternCacheSize(int patternCacheSize) {
+        patternCache.setMaxSize(patternCacheSize);
+    }
+
+    /**
+     * Get the cache of compiled patterns shared by the delete/replace operations.
+     * @return PatternCache
+     */
+    public PatternCache getPatternCache() {
+        return patternCache;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Requires an operator character, unless other operations have been added.
+     */
+    protected NameFilter createNameFilter() {
+        return unknownKinds ? NameFilter.ANY : NAME_FILTER;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object evaluate(String propertyName, PropertyHelper propertyHelper) {
+        if ((OperatorScanner.scan(propertyName) & anyKind) == 0) {
+            return null;
+        }
+        return super.evaluate(propertyName, propertyHelper);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected Object evaluateDelegates(String propertyName, PropertyHelper propertyHelper) {
+        int candidates = OperatorScanner.scan(propertyName);
+        List delegates = getDelegates();
+        for (int i = 0; i < kinds.length; i++) {
+            if ((kinds[i] & candidates) != 0) {
+                Object value = ((PropertyEvaluator) delegates.get(i)).evaluate(propertyName,
+                        propertyHelper);
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
 }
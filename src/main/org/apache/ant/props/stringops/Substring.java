@@ -34,6 +34,11 @@ public class Substring extends RegexBasedEvaluator {
         super("^(.*):(\\d+):(\\d+)$");
     }
 
+    /** {@inheritDoc} */
+    protected String[] match(String propertyName) {
+        return OperatorScanner.splitSubstring(propertyName);
+    }
+
     /** {@inheritDoc} */
     protected Object evaluate(String[] groups, PropertyHelper propertyHelper) {
         String value = (String) propertyHelper.getProperty(groups[1]);
@@ -34,6 +34,11 @@ public class Translate extends RegexBasedEvaluator {
         super("^(.*):\\+(.*)$");
     }
 
+    /** {@inheritDoc} */
+    protected String[] match(String propertyName) {
+        return OperatorScanner.splitAtLast(propertyName, ":+");
+    }
+
     /** {@inheritDoc} */
     protected Object evaluate(String[] groups, PropertyHelper propertyHelper) {
         return propertyHelper.getProperty(groups[1]) == null ? null : groups[2];